@@ -0,0 +1,227 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Arrays;
+
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * Histogram of the values of a feature whose bounds are not known in advance
+ * (no domain). It collects the values with their class ordinals while
+ * tracking the exact smallest and largest value, so that the initial buckets
+ * of a {@link BucketList} can be created from the exact bounds after the pass.
+ * 
+ * As long as the number of distinct (value, class) pairs is small, their
+ * exact frequencies are kept and the buckets are filled by replaying them
+ * (see {@link #replay(BucketList)}), which is identical to filling them with a
+ * second pass. Beyond that, the frequencies are dropped and only the exact
+ * bounds are tracked, so the buckets are created from the exact bounds and
+ * filled exactly with a second pass over the table.
+ * 
+ * For a distinct-value grid, each distinct finite value gets its own initial
+ * bucket if the frequencies are still exact and there are at most as many
+ * distinct values as allowed. The distinct values are then the sorted upper
+ * bounds of the buckets. Otherwise the equal-width grid is used.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class AdaptiveHistogram implements ValueSketch {
+
+	// largest number of distinct (value, class) pairs counted exactly
+	static final int MAX_EXACT = 1 << 12;
+
+	// exact smallest and largest finite value
+	private double min;
+	private double max;
+
+	// exact frequencies of (value, class) pairs in an open-addressing hash
+	// table, a frequency of zero marks an empty slot, null once there are
+	// too many distinct pairs
+	private double[] values;
+	private int[] valueClasses;
+	private long[] counts;
+	private int used;
+
+	// largest number of distinct values with one bucket each, 0 for the
+	// equal-width grid
+	private final int maxDistinct;
+
+	// largest number of distinct (value, class) pairs counted exactly
+	private final int maxExact;
+
+	/**
+	 * Constructor for the equal-width grid
+	 */
+	AdaptiveHistogram() {
+		this(0, MAX_EXACT);
+	}
+
+	/**
+	 * @param maxDistinct
+	 *            largest number of distinct values with one bucket each, 0 for
+	 *            the equal-width grid
+	 * @param maxExact
+	 *            largest number of distinct (value, class) pairs counted
+	 *            exactly
+	 */
+	AdaptiveHistogram(int maxDistinct, int maxExact) {
+		this.maxDistinct = maxDistinct;
+		this.maxExact = maxExact;
+		this.min = Double.POSITIVE_INFINITY;
+		this.max = Double.NEGATIVE_INFINITY;
+		this.values = new double[16];
+		this.valueClasses = new int[16];
+		this.counts = new long[16];
+	}
+
+	@Override
+	public void add(double x, int classIndex) {
+		if (!Double.isNaN(x) && !Double.isInfinite(x)) {
+			this.min = Math.min(this.min, x);
+			this.max = Math.max(this.max, x);
+		}
+		if (this.counts == null)
+			return;
+		this.addExact(x, classIndex, 1);
+
+		// only track the bounds if there are too many distinct pairs
+		if (this.used > this.maxExact) {
+			this.values = null;
+			this.valueClasses = null;
+			this.counts = null;
+		}
+	}
+
+	@Override
+	public void createBuckets(BucketList list) throws InvalidSettingsException {
+		if (this.isEmpty())
+			throw new InvalidSettingsException("No values for feature: " + list.getFeature());
+		if (this.maxDistinct > 0 && this.isExact()) {
+			double[] distinct = this.distinctValues();
+			if (distinct.length <= this.maxDistinct) {
+				list.setUpperBounds(this.min, this.max, Arrays.copyOf(distinct, distinct.length - 1));
+				return;
+			}
+		}
+		list.setGridBounds(this.min, this.max);
+		list.initBuckets();
+	}
+
+	/**
+	 * @return true if no finite value was added
+	 */
+	boolean isEmpty() {
+		return this.min > this.max;
+	}
+
+	@Override
+	public boolean isExact() {
+		return this.counts != null;
+	}
+
+	/**
+	 * @return the smallest finite value
+	 */
+	double getMin() {
+		return this.min;
+	}
+
+	/**
+	 * @return the largest finite value
+	 */
+	double getMax() {
+		return this.max;
+	}
+
+	/**
+	 * @return the sorted distinct finite values of the exact table
+	 */
+	private double[] distinctValues() {
+		double[] distinct = new double[this.used];
+		int n = 0;
+		for (int slot = 0; slot < this.counts.length; slot++) {
+			double x = this.values[slot];
+			if (this.counts[slot] != 0 && !Double.isNaN(x) && !Double.isInfinite(x))
+				distinct[n++] = x;
+		}
+		Arrays.sort(distinct, 0, n);
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (m == 0 || distinct[i] != distinct[m - 1])
+				distinct[m++] = distinct[i];
+		}
+		return Arrays.copyOf(distinct, m);
+	}
+
+	@Override
+	public void replay(BucketList list) {
+		for (int slot = 0; slot < this.counts.length; slot++) {
+			if (this.counts[slot] != 0)
+				list.add(this.values[slot], this.valueClasses[slot], this.counts[slot]);
+		}
+	}
+
+	/**
+	 * Add to the exact frequency of a (value, class) pair
+	 * 
+	 * @param x
+	 * @param classIndex
+	 * @param delta
+	 */
+	private void addExact(double x, int classIndex, long delta) {
+		int slot = this.find(x, classIndex);
+		if (this.counts[slot] == 0) {
+
+			// insert new pair, keep the load factor below 1/2
+			if (2 * (this.used + 1) > this.counts.length) {
+				this.rehash(2 * this.counts.length);
+				slot = this.find(x, classIndex);
+			}
+			this.values[slot] = x;
+			this.valueClasses[slot] = classIndex;
+			this.used++;
+		}
+		this.counts[slot] += delta;
+	}
+
+	/**
+	 * @param x
+	 * @param classIndex
+	 * @return the slot containing the pair or the empty slot where it would
+	 *         be inserted
+	 */
+	private int find(double x, int classIndex) {
+		int mask = this.counts.length - 1;
+		long bits = Double.doubleToLongBits(x);
+		int hash = (int) (bits ^ (bits >>> 32)) * 0x9E3779B9 + classIndex * 0x85EBCA6B;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (this.counts[slot] != 0 && (Double.doubleToLongBits(this.values[slot]) != bits
+				|| this.valueClasses[slot] != classIndex)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Move all pairs into tables of the given capacity
+	 * 
+	 * @param capacity
+	 *            a power of two
+	 */
+	private void rehash(int capacity) {
+		double[] oldValues = this.values;
+		int[] oldClasses = this.valueClasses;
+		long[] oldCounts = this.counts;
+		this.values = new double[capacity];
+		this.valueClasses = new int[capacity];
+		this.counts = new long[capacity];
+		for (int i = 0; i < oldCounts.length; i++) {
+			if (oldCounts[i] != 0) {
+				int slot = this.find(oldValues[i], oldClasses[i]);
+				this.values[slot] = oldValues[i];
+				this.valueClasses[slot] = oldClasses[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+}
@@ -1,11 +1,5 @@
 package org.knime.base.node.preproc.binner.lucs_kdd;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import org.knime.core.data.DataCell;
 
 import com.google.common.collect.Range;
@@ -18,49 +12,95 @@ import com.google.common.collect.Range;
 public class Bucket {
 
 	// number of elements in bucket
-	private int size; 		
+	private long size; 		
 	
 	// range of bucket
 	private Range<Double> range; 
 	
-	// frequency table for class variable in bucket
-	private Map<DataCell, Integer> classFreqTable; 
+	// frequency table for class variable in bucket, indexed by class ordinal
+	private ClassFrequencies classFreqTable; 
+	
+	// the two most frequent classes (ordinal and frequency)
+	private int firstClass;
+	private long firstFreq;
+	private int secondClass;
+	private long secondFreq;
+	
+	// dictionary of the class values
+	private ClassDictionary classes;
 	
-	// dominant class in bucket
-	private DataCell dominantClass;
+	// ordinal of the dominant class in bucket (-1 if not set)
+	private int dominantClass;
 	
 	/**
 	 * Constructor
 	 * @param range
+	 * @param classes
 	 */
-	public Bucket(Range<Double> range){
+	public Bucket(Range<Double> range, ClassDictionary classes){
 				
 		this.range = range;
 		this.size = 0;
+		this.classes = classes;
+		this.dominantClass = -1;
 		
 		// initialize class frequency table
-		this.classFreqTable = new HashMap<DataCell, Integer> () {					
-			private static final long serialVersionUID = 1L;
-			@Override			
-			public Integer get(Object key) {
-				return containsKey(key) ? super.get(key) : 0;
-			}
-		};
+		this.classFreqTable = ClassFrequencies.create(classes.size());
+		this.firstClass = -1;
+		this.secondClass = -1;
+	}
+	
+	
+	/**
+	 * Add an instance (ordinal of the class value) to the bucket
+	 * @param classIndex
+	 */
+	protected void add(int classIndex){
+		this.add(classIndex, 1);
 	}
 	
 	
 	/**
-	 * Add an instance (row identifier and class value) to the bucket
-	 * @param key
-	 * @param classVal
+	 * Add instances of a class to the bucket, or retract them for a negative
+	 * number of instances
+	 * @param classIndex
+	 * @param delta number of instances
 	 */
-	protected void add(DataCell classVal){
+	protected void add(int classIndex, long delta){
+		
+		// retracted instances must have been added before
+		if(delta < 0 && this.classFreqTable.get(classIndex) < -delta){
+			throw new IllegalArgumentException("Cannot retract " + (-delta) + " instances of class "
+					+ this.classes.get(classIndex) + " from bucket " + this.range + " containing only "
+					+ this.classFreqTable.get(classIndex));
+		}
 		
 		// update entry counter
-		this.size++;
+		this.size += delta;
 		
-		// update class frequency table
-		this.classFreqTable.put(classVal, this.classFreqTable.get(classVal) + 1);			
+		// update class frequency table and the two most frequent classes
+		long freq = this.classFreqTable.add(classIndex, delta);
+		if(delta < 0){
+			
+			// only a decrease of the two most frequent classes can change them
+			if(classIndex == this.firstClass || classIndex == this.secondClass){
+				this.recomputeTopClasses();
+			}
+			return;
+		}
+		if(classIndex == this.firstClass){
+			this.firstFreq = freq;
+		}
+		else if(freq > this.firstFreq){
+			this.secondClass = this.firstClass;
+			this.secondFreq = this.firstFreq;
+			this.firstClass = classIndex;
+			this.firstFreq = freq;
+		}
+		else if(classIndex == this.secondClass || freq > this.secondFreq){
+			this.secondClass = classIndex;
+			this.secondFreq = freq;
+		}
 	}
 		
 	
@@ -68,26 +108,13 @@ public class Bucket {
 	 * Set the dominant class in the bucket (if it exists)
 	 */
 	protected void determineDominantClass(){
-		
-		// return null if bucket has no dominant class
-		if(!this.hasDominantClass()) this.dominantClass = null;					
-		
-		// get class with maximum frequency
-		int max = 0;
-		DataCell domClass = null;		
-		for(Entry<DataCell, Integer> entry : this.classFreqTable.entrySet()){
-			if(entry.getValue() > max){
-				max = entry.getValue();
-				domClass = entry.getKey();        		
-        	}
-		}		
-        this.dominantClass = domClass;
+		this.dominantClass = this.hasDominantClass() ? this.firstClass : -1;
 	}
 		
 	
 	/**
-	 * Check if bucket has a dominant class
-	 * @param bucket
+	 * Check if bucket has a dominant class, i.e. a single class with the 
+	 * highest frequency
 	 * @return
 	 */
 	protected boolean hasDominantClass(){
@@ -95,16 +122,8 @@ public class Bucket {
 		// if no observation in bucket return false
 		if(this.size == 0) return false;
 		
-		// if only observations of one class are in the bucket return true
-		if(this.classFreqTable.size() == 1) return true;
-		
-		// else, check if last and next-to-last element in sorted frequency array are equal		
-		ArrayList<Integer> values = new ArrayList<>(this.classFreqTable.values());		
-		Collections.sort(values);				
-		if(values.get(values.size() - 1) == values.get(values.size() - 2)){
-			return false;
-		}			
-		return true;				
+		// else, check if the largest and the second largest frequency are equal
+		return this.firstFreq != this.secondFreq;				
 	}
 	
 	
@@ -118,13 +137,67 @@ public class Bucket {
 		this.size = this.size + bucket.getSize();
 		
 		// update frequency table
-		bucket.getClassFreqTable().forEach((k, v) -> this.classFreqTable.merge(k, v, (v1, v2) -> v1 + v2));
+		ClassFrequencies other = bucket.classFreqTable;
+		for(int slot = 0; slot < other.slots(); slot++){
+			int c = other.classAt(slot);
+			if(c >= 0) this.classFreqTable.add(c, other.countAt(slot));
+		}
+		
+		// the two most frequent classes are among the previous two and the
+		// classes of the other bucket, since no frequency decreased
+		int first = this.firstClass;
+		int second = this.secondClass;
+		this.firstClass = -1;
+		this.firstFreq = 0;
+		this.secondClass = -1;
+		this.secondFreq = 0;
+		this.updateTopClasses(first);
+		this.updateTopClasses(second);
+		for(int slot = 0; slot < other.slots(); slot++){
+			int c = other.classAt(slot);
+			if(c >= 0) this.updateTopClasses(c);
+		}
 				
 		// update bucket borders
 		this.setRange(this.range.span(bucket.getRange()));
 	}
 	
 	
+	/**
+	 * Determine the two most frequent classes from the complete frequency 
+	 * table
+	 */
+	private void recomputeTopClasses(){
+		this.firstClass = -1;
+		this.firstFreq = 0;
+		this.secondClass = -1;
+		this.secondFreq = 0;
+		for(int slot = 0; slot < this.classFreqTable.slots(); slot++){
+			this.updateTopClasses(this.classFreqTable.classAt(slot));
+		}
+	}
+	
+	
+	/**
+	 * Consider a class as one of the two most frequent classes
+	 * @param classIndex
+	 */
+	private void updateTopClasses(int classIndex){
+		if(classIndex < 0 || classIndex == this.firstClass || classIndex == this.secondClass) return;
+		long freq = this.classFreqTable.get(classIndex);
+		if(freq > this.firstFreq){
+			this.secondClass = this.firstClass;
+			this.secondFreq = this.firstFreq;
+			this.firstClass = classIndex;
+			this.firstFreq = freq;
+		}
+		else if(freq > this.secondFreq){
+			this.secondClass = classIndex;
+			this.secondFreq = freq;
+		}
+	}
+	
+	
 	/**
 	 * Calculate the probability of the dominant class in the bucket (if existent)
 	 * @return
@@ -135,28 +208,113 @@ public class Bucket {
 		if(!this.hasDominantClass()) return 0;
 		
 		// calculate proportion of dominant class in the bucket
-		if(this.dominantClass == null) this.determineDominantClass();
-		double ndom = this.getClassFreqTable().get(this.dominantClass);		
+		if(this.dominantClass < 0) this.determineDominantClass();
+		double ndom = this.getClassFreq(this.dominantClass);		
 		double n = this.getSize();
 		return ndom/n;
 	}	
 	
 	
 	/**
-	 * Check if instance is in bucket
-	 * @param key
-	 * @return
+	 * Check whether the dominant class is significantly more frequent than any
+	 * other class in the bucket, i.e. the Wilson score interval of its 
+	 * proportion lies above the interval of the second most frequent class
+	 * @param z quantile of the standard normal distribution for the confidence
+	 * level, e.g. 1.96 for 95%
+	 * @return true if the dominant class is significant
 	 */
-	protected boolean contains(double value){
-		if(this.range.contains(value)) return true;		
-		return false;
+	protected boolean isDominantClassStable(double z){
+		if(this.dominantClass < 0 || this.size == 0) return false;
+		long dom = this.getClassFreq(this.dominantClass);
+		long other = this.dominantClass == this.firstClass ? this.secondFreq : this.firstFreq;
+		return wilsonInterval(dom, this.size, z)[0] > wilsonInterval(other, this.size, z)[1];
 	}
+	
+	
+	/**
+	 * Wilson score interval of a proportion
+	 * @param k number of successes
+	 * @param n number of trials
+	 * @param z quantile of the standard normal distribution for the confidence
+	 * level
+	 * @return lower and upper bound of the proportion
+	 */
+	protected static double[] wilsonInterval(long k, long n, double z){
+		if(n == 0) return new double[] { 0, 1 };
+		double p = k / (double) n;
+		double z2 = z * z;
+		double denominator = 1 + z2 / n;
+		double center = (p + z2 / (2 * n)) / denominator;
+		double half = z / denominator * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+		return new double[] { Math.max(0, center - half), Math.min(1, center + half) };
+	}
+	
+	
+	/**
+	 * Calculate the probability of the dominant class in the bucket that would
+	 * result from merging two buckets, without creating the merged bucket
+	 * @param b1
+	 * @param b2
+	 * @return proportion of the dominant class in the merged bucket, zero if 
+	 * the merged bucket has no dominant class
+	 */
+	protected static double determineDominantClassProb(Bucket b1, Bucket b2){
+		
+		// iterate over the classes of the bucket with the smaller table, the 
+		// classes which only occur in the other bucket are bounded by its two
+		// most frequent classes
+		Bucket small = b1.classFreqTable.slots() <= b2.classFreqTable.slots() ? b1 : b2;
+		Bucket large = small == b1 ? b2 : b1;
+		
+		long first = 0;
+		long second = 0;
+		int firstClass = -1;
+		for(int slot = -2; slot < small.classFreqTable.slots(); slot++){
+			int c = slot == -2 ? large.firstClass : slot == -1 ? large.secondClass : small.classFreqTable.classAt(slot);
+			if(c < 0 || (slot >= 0 && (c == large.firstClass || c == large.secondClass))) continue;
+			long freq = small.classFreqTable.get(c) + large.classFreqTable.get(c);
+			if(freq > first){
+				second = first;
+				first = freq;
+				firstClass = c;
+			}
+			else if(freq > second){
+				second = freq;
+			}
+		}
 		
+		// return zero if no dominant class exists
+		long n = b1.getSize() + b2.getSize();
+		if(n == 0 || firstClass < 0 || first == second) return 0;
+		return first / (double) n;
+	}
+	
+	
+	/**
+	 * @return a copy of the bucket
+	 */
+	protected Bucket copy(){
+		return this.copy(this.classes);
+	}
+	
+	
+	/**
+	 * @param classes the class dictionary of the copy, containing the class
+	 * values of this bucket with the same ordinals
+	 * @return a copy of the bucket
+	 */
+	protected Bucket copy(ClassDictionary classes){
+		Bucket bucket = new Bucket(this.range, classes);
+		bucket.merge(this);
+		bucket.setDominantClass(this.dominantClass);
+		return bucket;
+	}
+	
 	
 	/**
 	 * @return size
 	 */
-	public int getSize(){
+	public long getSize(){
 		return this.size;
 	}	
 	
@@ -164,23 +322,52 @@ public class Bucket {
 	 * @return the dominant class
 	 */
 	public DataCell getDominantClass(){
+		return this.dominantClass < 0 ? null : this.classes.get(this.dominantClass);
+	}
+	
+	/**
+	 * @return the ordinal of the dominant class (-1 if not set)
+	 */
+	public int getDominantClassIndex(){
 		return this.dominantClass;
 	}
 	
 	/**
-	 * @param dominantClass
+	 * @param dominantClass ordinal of the dominant class
 	 */
-	public void setDominantClass(DataCell dominantClass){
+	public void setDominantClass(int dominantClass){
 		this.dominantClass = dominantClass;
 	}
 	
 	/**
-	 * @return class frequency table
+	 * @return frequency of the most frequent class
+	 */
+	public long getMaxClassFreq(){
+		return this.firstFreq;
+	}
+	
+	/**
+	 * @param classIndex
+	 * @return frequency of the class with the given ordinal
 	 */
-	public Map<DataCell, Integer> getClassFreqTable(){
+	public long getClassFreq(int classIndex){
+		return this.classFreqTable.get(classIndex);
+	}
+	
+	/**
+	 * @return the class frequency table
+	 */
+	ClassFrequencies getClassFreqTable(){
 		return this.classFreqTable;
 	}
 	
+	/**
+	 * @return the class dictionary
+	 */
+	public ClassDictionary getClassDictionary(){
+		return this.classes;
+	}
+	
 	/**
 	 * @return the range
 	 */
@@ -0,0 +1,134 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Computes the initial buckets of a batch of values in an equal-width grid.
+ * This class is the scalar implementation. If the optional fragment
+ * org.knime.base.node.preproc.binner.lucs_kdd.vector is installed and the
+ * runtime provides the Vector API (module jdk.incubator.vector, Java 17 or
+ * later started with --add-modules jdk.incubator.vector), its vectorized
+ * subclass is used instead. It is only used if it gives the same buckets as
+ * the scalar implementation for a set of probe values; otherwise, and if the
+ * fragment or the module is missing, the scalar implementation is used.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+class BucketIndexKernel {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(BucketIndexKernel.class);
+
+	// implementation of the optional fragment
+	private static final String VECTOR_KERNEL = "org.knime.base.node.preproc.binner.lucs_kdd.VectorBucketIndexKernel";
+
+	// kernel chosen when the class is initialized
+	private static final BucketIndexKernel INSTANCE = load();
+
+	/**
+	 * @return the vectorized kernel if it is available, otherwise the scalar
+	 *         kernel
+	 */
+	static BucketIndexKernel get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the vectorized kernel if it can be loaded and agrees with the
+	 *         scalar kernel, otherwise the scalar kernel
+	 */
+	private static BucketIndexKernel load() {
+		BucketIndexKernel scalar = new BucketIndexKernel();
+		BucketIndexKernel vector;
+		try {
+			vector = (BucketIndexKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			LOGGER.debug("Vector API kernel not installed, using scalar bucket indices");
+			return scalar;
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			LOGGER.debug("Vector API not available, using scalar bucket indices: " + e);
+			return scalar;
+		}
+
+		// probe values around the borders and beyond the grid of two grids
+		double[] probe = new double[67];
+		for (int i = 0; i < 60; i++) {
+			probe[i] = -0.5 + i / 40.0 + (i % 3 - 1) * Math.ulp(1.0);
+		}
+		probe[60] = Double.NaN;
+		probe[61] = Double.POSITIVE_INFINITY;
+		probe[62] = Double.NEGATIVE_INFINITY;
+		probe[63] = -0.0;
+		probe[64] = Double.MAX_VALUE;
+		probe[65] = -Double.MAX_VALUE;
+		probe[66] = Double.MIN_VALUE;
+		int[] expected = new int[probe.length];
+		int[] actual = new int[probe.length];
+		try {
+			for (int n : new int[] { 7, 40 }) {
+				scalar.equalWidthIndices(probe, probe.length, 0, 1, n, n - 1, expected);
+				vector.equalWidthIndices(probe, probe.length, 0, 1, n, n - 1, actual);
+				for (int i = 0; i < probe.length; i++) {
+					if (expected[i] != actual[i]) {
+						LOGGER.warn("Vector API kernel gives bucket " + actual[i] + " instead of " + expected[i]
+								+ " for " + probe[i] + ", using scalar bucket indices");
+						return scalar;
+					}
+				}
+			}
+		} catch (RuntimeException | LinkageError e) {
+			LOGGER.debug("Vector API not available, using scalar bucket indices: " + e);
+			return scalar;
+		}
+		LOGGER.debug("Using Vector API bucket indices");
+		return vector;
+	}
+
+	/**
+	 * Compute the positions of the buckets of a batch of values in an
+	 * equal-width grid, see {@link #equalWidthIndex(double, double, double, int, double)}
+	 *
+	 * @param x
+	 *            the values
+	 * @param length
+	 *            number of values
+	 * @param low
+	 *            smallest value of the grid
+	 * @param range
+	 *            largest minus smallest value of the grid
+	 * @param n
+	 *            number of buckets of the grid
+	 * @param maxIndex
+	 *            position of the last bucket
+	 * @param indices
+	 *            receives the position of the bucket of each value
+	 */
+	void equalWidthIndices(double[] x, int length, double low, double range, int n, int maxIndex, int[] indices) {
+		for (int i = 0; i < length; i++) {
+			indices[i] = (int) equalWidthIndex(x[i], low, range, n, maxIndex);
+		}
+	}
+
+	/**
+	 * Position of the bucket of a value in the equal-width grid: the value is
+	 * mapped to z in [0, 1] and the bucket is ceil(N * z) - 1, where values
+	 * below the grid and NaN go to the first bucket and values beyond the grid
+	 * to the last bucket. The clamping is done in floating point, so infinite
+	 * values cannot overflow.
+	 *
+	 * @param x
+	 * @param low
+	 *            smallest value of the grid
+	 * @param range
+	 *            largest minus smallest value of the grid
+	 * @param n
+	 *            number of buckets of the grid
+	 * @param maxIndex
+	 *            position of the last bucket
+	 * @return the position of the bucket
+	 */
+	static double equalWidthIndex(double x, double low, double range, int n, double maxIndex) {
+		double b = Math.ceil(n * ((x - low) / range)) - 1;
+		return Math.min(Math.max(b, 0), maxIndex);
+	}
+}
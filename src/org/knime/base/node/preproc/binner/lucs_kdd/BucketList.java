@@ -1,14 +1,23 @@
 package org.knime.base.node.preproc.binner.lucs_kdd;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnDomain;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.LongValue;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.filter.TableFilter;
 
 import com.google.common.collect.Range;
 
@@ -18,11 +27,50 @@ import com.google.common.collect.Range;
  */
 public class BucketList {
 
+	/**
+	 * Default largest number of initial buckets of a feature
+	 */
+	public static final int DEFAULT_RESOLUTION = 100;
+
+	/**
+	 * Grid of the initial buckets
+	 */
+	public enum Grid {
+		/** divide the range of the feature into buckets of equal width */
+		EQUAL_WIDTH,
+		/** seed buckets of roughly equal frequency from a quantile sketch */
+		EQUAL_FREQUENCY,
+		/** one bucket per distinct value if there are few distinct values */
+		DISTINCT_VALUES
+	}
+
 	private ArrayList<Bucket> buckets;
-	private DataCell[] dominantClasses;
 	private String feature;
 	private String classAttr;
 	private BufferedDataTable inData;
+	private ClassDictionary classes;
+	private MergeHierarchy hierarchy;
+
+	// smallest and largest value of the feature and number of initial buckets
+	private double low;
+	private double upp;
+	private int N;
+
+	// the feature has integer values
+	private boolean intFeature;
+
+	// the grid bounds are fixed instead of taken from the domain
+	private boolean fixedGrid;
+
+	// largest number of initial buckets
+	private int resolution = DEFAULT_RESOLUTION;
+
+	// grid of the initial buckets
+	private Grid grid = Grid.EQUAL_WIDTH;
+
+	// upper bounds of the initial buckets (except the unbounded last one) of
+	// an equal-frequency or distinct-value grid, null for the equal-width grid
+	private double[] upperBounds;
 
 	/**
 	 * @param feature
@@ -31,16 +79,84 @@ public class BucketList {
 	 */
 	// constructor
 	public BucketList(String feature, String classAttr, BufferedDataTable inData) {
+		this(feature, classAttr, inData,
+				ClassDictionary.fromDomain(inData.getDataTableSpec().getColumnSpec(classAttr)));
+	}
+
+	/**
+	 * @param feature
+	 * @param classAttr
+	 * @param inData
+	 * @param classes
+	 *            dictionary of the class values
+	 */
+	public BucketList(String feature, String classAttr, BufferedDataTable inData, ClassDictionary classes) {
 		this.buckets = new ArrayList<>();
 		this.feature = feature;
 		this.classAttr = classAttr;
 		this.inData = inData;
+		this.classes = classes;
+	}
+
+	/**
+	 * @param feature
+	 * @param classAttr
+	 * @param classes
+	 * @param low
+	 *            smallest value of the grid
+	 * @param upp
+	 *            largest value of the grid
+	 * @param N
+	 *            number of initial buckets of the grid
+	 * @param intFeature
+	 * @param grid
+	 *            the grid setting the buckets were created with
+	 * @param upperBounds
+	 *            upper bounds of the initial buckets (except the unbounded
+	 *            last one) of an equal-frequency or distinct-value grid, null
+	 *            for the equal-width grid
+	 * @return a bucket list with the empty initial buckets of the grid
+	 */
+	static BucketList create(String feature, String classAttr, ClassDictionary classes, double low, double upp,
+			int N, boolean intFeature, Grid grid, double[] upperBounds) {
+		BucketList list = new BucketList(feature, classAttr, classes, low, upp, N, intFeature, new ArrayList<>());
+		list.grid = grid;
+		list.upperBounds = upperBounds;
+		list.createBuckets();
+		return list;
+	}
+
+	/**
+	 * @param feature
+	 * @param classAttr
+	 * @param classes
+	 * @param low
+	 *            smallest value of the grid
+	 * @param upp
+	 *            largest value of the grid
+	 * @param N
+	 *            number of initial buckets of the grid
+	 * @param intFeature
+	 * @param buckets
+	 *            the initial buckets
+	 */
+	BucketList(String feature, String classAttr, ClassDictionary classes, double low, double upp, int N,
+			boolean intFeature, ArrayList<Bucket> buckets) {
+		this.buckets = buckets;
+		this.feature = feature;
+		this.classAttr = classAttr;
+		this.classes = classes;
+		this.low = low;
+		this.upp = upp;
+		this.N = N;
+		this.intFeature = intFeature;
 	}
 
 	/**
 	 * Divide the range of the attribute into N discrete sub-ranges (buckets).
-	 * For integers with a range less than 100, N is equivalent to the range. In
-	 * all other cases N is equivalent to 100. Afterwards, the buckets are
+	 * For integers with a range less than the resolution, N is equivalent to
+	 * the range. In all other cases N is equivalent to the resolution.
+	 * Afterwards, the buckets are
 	 * "filled". However, no instances are actually added to the buckets, but
 	 * for each bucket only the total number of elements and the distribution of
 	 * class values within the bucket are updated.
@@ -49,51 +165,519 @@ public class BucketList {
 	 */
 	protected void fill() throws InvalidSettingsException {
 
-		// get smallest and largest value of the feature
+		// create the empty buckets
+		this.initBuckets();
+
+		// loop over instances
+		int classIndex = getColIndex(this.classAttr);
+		int featureIndex = getColIndex(this.feature);
+		try (CloseableRowIterator rows = readColumns(this.inData, new int[] { featureIndex }, classIndex)) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+
+				// get class value (ignore if missing)
+				DataCell c = r.getCell(classIndex);
+				if (c.isMissing())
+					continue;
+
+				// put value in bucket
+				this.add(r.getCell(featureIndex), this.classes.indexOf(c), 1);
+			}
+		}
+	}
+
+	/**
+	 * Fill the buckets of several features with a single pass over the input
+	 * table. The class value of each row is resolved once to its ordinal and
+	 * then added to the matching bucket of every feature.
+	 * 
+	 * @param bucketLists
+	 *            bucket lists sharing the same input table, class attribute
+	 *            and class dictionary
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary of the bucket lists
+	 * @param exec
+	 * @throws InvalidSettingsException
+	 * @throws CanceledExecutionException
+	 */
+	public static void fill(BucketList[] bucketLists, BufferedDataTable inData, String classAttr,
+			ClassDictionary classes, ExecutionMonitor exec) throws InvalidSettingsException, CanceledExecutionException {
+		fill(bucketLists, inData, classAttr, classes, null, null, exec);
+	}
+
+	/**
+	 * Fill the buckets of several features with the rows of a random sample
+	 * of the input table (see {@link RowSample}). The rows are still read, but
+	 * only the selected rows are added to the buckets.
+	 * 
+	 * The buckets of features whose grid depends on the values (an
+	 * equal-frequency or distinct-value grid, or no domain bounds) are
+	 * created after the pass from a {@link ValueSketch}. If the sketch did not
+	 * keep the exact class frequencies, these buckets are filled with a second
+	 * pass over the table (reading only their columns), so the counts are
+	 * always exact.
+	 * 
+	 * @param bucketLists
+	 *            bucket lists sharing the same input table, class attribute
+	 *            and class dictionary
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary of the bucket lists
+	 * @param sample
+	 *            the rows to add, null to add all rows
+	 * @param hashes
+	 *            receives every row of the first pass, null if no content
+	 *            hash is taken
+	 * @param exec
+	 * @throws InvalidSettingsException
+	 * @throws CanceledExecutionException
+	 */
+	static void fill(BucketList[] bucketLists, BufferedDataTable inData, String classAttr, ClassDictionary classes,
+			RowSample sample, ContentHash hashes, ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+
+		// create the empty buckets, the values of features with an
+		// equal-frequency grid are collected in quantile sketches and those of
+		// features with a distinct-value grid or without domain bounds in
+		// adaptive histograms
+		DataTableSpec inSpec = inData.getDataTableSpec();
+		ValueSketch[] sketches = new ValueSketch[bucketLists.length];
+		for (int f = 0; f < bucketLists.length; f++) {
+			BucketList list = bucketLists[f];
+			if (list.grid == Grid.EQUAL_FREQUENCY)
+				sketches[f] = new QuantileSketch();
+			else if (list.grid == Grid.DISTINCT_VALUES)
+				sketches[f] = new AdaptiveHistogram(list.resolution,
+						Math.max(AdaptiveHistogram.MAX_EXACT, list.resolution * Math.max(classes.size(), 1)));
+			else if (list.fixedGrid || inSpec.getColumnSpec(list.getFeature()).getDomain().hasBounds())
+				list.initBuckets();
+			else
+				sketches[f] = new AdaptiveHistogram();
+		}
+		boolean sketched = false;
+		for (ValueSketch sketch : sketches) {
+			sketched |= sketch != null;
+		}
+		RowSample recount = sample == null ? null : sample.copy();
+		count(bucketLists, sketches, inData, classAttr, classes, sample, hashes, 1,
+				exec.createSubProgress(sketched ? 0.5 : 1));
+
+		// create the empty buckets from the collected values and fill them
+		// with the exact frequencies kept by the sketch, the buckets of the
+		// other sketched features are filled with a second pass
+		List<BucketList> inexact = new ArrayList<>();
+		for (int f = 0; f < bucketLists.length; f++) {
+			if (sketches[f] == null)
+				continue;
+			sketches[f].createBuckets(bucketLists[f]);
+			if (sketches[f].isExact())
+				sketches[f].replay(bucketLists[f]);
+			else
+				inexact.add(bucketLists[f]);
+			sketches[f] = null;
+		}
+		if (!inexact.isEmpty())
+			count(inexact.toArray(new BucketList[0]), null, inData, classAttr, classes, recount, null, 1,
+					exec.createSubProgress(0.5));
+	}
+
+	/**
+	 * Fill separate buckets of several features for each group of rows, e.g.
+	 * the folds of a cross-validation, with a single pass over the input
+	 * table. All groups share the equal-width grid of the initial buckets, so
+	 * their counts can be added and subtracted (see
+	 * {@link #addCounts(BucketList, int[], long)}). Rows with a missing group
+	 * value are ignored. The grid of a feature spans its domain bounds; for
+	 * features without domain bounds, the smallest and largest value are
+	 * determined with a pass over their columns first.
+	 * 
+	 * @param features
+	 * @param inData
+	 * @param classAttr
+	 * @param groupAttr
+	 *            column containing the group of each row
+	 * @param classes
+	 *            the class dictionary of the bucket lists
+	 * @param groups
+	 *            dictionary of the group values, the ordinal of a group is the
+	 *            position of its bucket lists in the result
+	 * @param exec
+	 * @return the bucket list of each feature for each group
+	 * @throws InvalidSettingsException
+	 * @throws CanceledExecutionException
+	 */
+	public static List<BucketList[]> fillGroups(String[] features, BufferedDataTable inData, String classAttr,
+			String groupAttr, ClassDictionary classes, ClassDictionary groups, ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+
+		DataTableSpec inSpec = inData.getDataTableSpec();
+		int[] featureCols = new int[features.length];
+		for (int f = 0; f < features.length; f++) {
+			featureCols[f] = inSpec.findColumnIndex(features[f]);
+		}
+		int classCol = inSpec.findColumnIndex(classAttr);
+		int groupCol = inSpec.findColumnIndex(groupAttr);
+
+		// create the empty buckets once, the buckets of each group are copies;
+		// the grids of features without domain bounds span their values
+		BucketList[] templates = new BucketList[features.length];
+		List<Integer> unbounded = new ArrayList<>();
+		for (int f = 0; f < features.length; f++) {
+			templates[f] = new BucketList(features[f], classAttr, inData, classes);
+			if (!inSpec.getColumnSpec(featureCols[f]).getDomain().hasBounds())
+				unbounded.add(f);
+		}
+		if (!unbounded.isEmpty()) {
+			double[][] bounds = valueBounds(inData, unbounded.stream().mapToInt(f -> featureCols[f]).toArray(),
+					exec.createSubProgress(0.5));
+			exec = exec.createSubProgress(0.5);
+			for (int i = 0; i < bounds.length; i++) {
+				templates[unbounded.get(i)].setGridBounds(bounds[i][0], bounds[i][1]);
+			}
+		}
+		for (BucketList template : templates) {
+			template.initBuckets();
+		}
+
+		// loop over instances
+		List<BucketList[]> groupLists = new ArrayList<>();
+		long rowCount = inData.size();
+		long row = 0;
+		try (CloseableRowIterator rows = readColumns(inData, featureCols, classCol, groupCol)) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+				exec.checkCanceled();
+				exec.setProgress(row++ / (double) rowCount);
+
+				// get group of the row (ignore if missing)
+				DataCell g = r.getCell(groupCol);
+				if (g.isMissing())
+					continue;
+				int groupIndex = groups.indexOf(g);
+				while (groupLists.size() <= groupIndex) {
+					BucketList[] lists = new BucketList[features.length];
+					for (int f = 0; f < features.length; f++) {
+						lists[f] = templates[f].copy();
+					}
+					groupLists.add(lists);
+				}
+
+				// get class value (ignore if missing)
+				DataCell c = r.getCell(classCol);
+				if (c.isMissing())
+					continue;
+
+				// put value of each feature in the bucket of its group
+				int classIndex = classes.indexOf(c);
+				BucketList[] lists = groupLists.get(groupIndex);
+				for (int f = 0; f < features.length; f++) {
+					lists[f].add(r.getCell(featureCols[f]), classIndex, 1);
+				}
+			}
+		}
+		return groupLists;
+	}
+
+	/**
+	 * Determine the smallest and largest value of several columns with a
+	 * single pass over the table, ignoring missing values and NaN
+	 * 
+	 * @param inData
+	 * @param columns
+	 *            indices of numeric columns
+	 * @param exec
+	 * @return the smallest and largest value of each column, 0 and 0 for a
+	 *         column without values
+	 * @throws CanceledExecutionException
+	 */
+	static double[][] valueBounds(BufferedDataTable inData, int[] columns, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		double[][] bounds = new double[columns.length][];
+		for (int i = 0; i < columns.length; i++) {
+			bounds[i] = new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		}
+		long rowCount = inData.size();
+		long row = 0;
+		try (CloseableRowIterator rows = readColumns(inData, columns)) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+				exec.checkCanceled();
+				exec.setProgress(row++ / (double) rowCount);
+				for (int i = 0; i < columns.length; i++) {
+					DataCell val = r.getCell(columns[i]);
+					if (val.isMissing())
+						continue;
+					double x = ((DoubleValue) val).getDoubleValue();
+					bounds[i][0] = Math.min(bounds[i][0], x);
+					bounds[i][1] = Math.max(bounds[i][1], x);
+				}
+			}
+		}
+		for (double[] b : bounds) {
+			if (!(b[0] <= b[1])) {
+				b[0] = 0;
+				b[1] = 0;
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Update the counts of the buckets of several features with the rows of a
+	 * table. The rows are added to the counts for a positive delta and
+	 * retracted from the counts for a negative delta, the grid of the buckets
+	 * stays unchanged. Values outside the grid are counted in the first or
+	 * last bucket.
+	 * 
+	 * @param bucketLists
+	 *            filled bucket lists sharing the same class attribute and
+	 *            class dictionary
+	 * @param rows
+	 *            table containing the features and the class attribute
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary of the bucket lists
+	 * @param delta
+	 *            1 to add the rows, -1 to retract them
+	 * @param exec
+	 * @throws CanceledExecutionException
+	 */
+	public static void update(BucketList[] bucketLists, BufferedDataTable rows, String classAttr,
+			ClassDictionary classes, long delta, ExecutionMonitor exec) throws CanceledExecutionException {
+		count(bucketLists, null, rows, classAttr, classes, null, null, delta, exec);
+	}
+
+	/**
+	 * Add the rows of a table to the counts of the buckets with the given
+	 * delta
+	 * 
+	 * @param bucketLists
+	 * @param sketches
+	 *            sketch collecting the values of each feature instead of its
+	 *            buckets, null for features (or all features) counted in
+	 *            their buckets
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 * @param sample
+	 *            the rows to add, null to add all rows
+	 * @param hashes
+	 *            receives every row, also rows not added, null if no content
+	 *            hash is taken
+	 * @param delta
+	 * @param exec
+	 * @throws CanceledExecutionException
+	 */
+	private static void count(BucketList[] bucketLists, ValueSketch[] sketches, BufferedDataTable inData,
+			String classAttr, ClassDictionary classes, RowSample sample, ContentHash hashes, long delta,
+			ExecutionMonitor exec) throws CanceledExecutionException {
+		DataTableSpec inSpec = inData.getDataTableSpec();
+		int[] featureCols = new int[bucketLists.length];
+		for (int f = 0; f < bucketLists.length; f++) {
+			featureCols[f] = inSpec.findColumnIndex(bucketLists[f].getFeature());
+		}
+		int classCol = inSpec.findColumnIndex(classAttr);
+
+		// the values of the features counted in their buckets are buffered
+		// for a block of rows, whose buckets are computed at once
+		int[] blockCols = featureCols.clone();
+		for (int f = 0; f < bucketLists.length; f++) {
+			if (sketches != null && sketches[f] != null)
+				blockCols[f] = -1;
+		}
+		RowBlock block = new RowBlock(blockCols);
+
+		// loop over instances
+		long rowCount = inData.size();
+		long row = 0;
+		try (CloseableRowIterator rows = readColumns(inData, featureCols,
+				hashes == null ? new int[] { classCol } : hashes.withColumns(classCol))) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+				exec.checkCanceled();
+				exec.setProgress(row++ / (double) rowCount);
+				if (hashes != null)
+					hashes.add(r);
+
+				// get class value (ignore if missing or not sampled)
+				DataCell c = r.getCell(classCol);
+				if (sample != null && !sample.select(c.isMissing() ? -1 : classes.indexOf(c)))
+					continue;
+				if (c.isMissing())
+					continue;
+
+				// put value of each sketched feature in its sketch, buffer
+				// the others
+				int classIndex = classes.indexOf(c);
+				for (int f = 0; f < bucketLists.length; f++) {
+					if (block.isBuffered(f))
+						continue;
+					DataCell val = r.getCell(featureCols[f]);
+					if (!val.isMissing())
+						sketches[f].add(((DoubleValue) val).getDoubleValue(), classIndex);
+				}
+				if (block.add(r, classIndex))
+					add(bucketLists, block, delta);
+			}
+		}
+		add(bucketLists, block, delta);
+	}
+
+	/**
+	 * Add the buffered values of a block of rows to the buckets of their
+	 * features with the given delta and clear the block
+	 * 
+	 * @param bucketLists
+	 * @param block
+	 * @param delta
+	 */
+	private static void add(BucketList[] bucketLists, RowBlock block, long delta) {
+		for (int f = 0; f < bucketLists.length; f++) {
+			if (!block.isBuffered(f))
+				continue;
+			ArrayList<Bucket> buckets = bucketLists[f].buckets;
+			int[] indices = block.bucketIndices(f, bucketLists[f]);
+			for (int i = 0; i < block.size(); i++) {
+				if (!block.isMissing(f, i))
+					buckets.get(indices[i]).add(block.getClassIndex(i), delta);
+			}
+		}
+		block.clear();
+	}
+
+	/**
+	 * Iterate over the rows of a table reading only the given columns, so the
+	 * other cells of wide tables are not deserialized. The cells of the read
+	 * columns keep their column indices.
+	 * 
+	 * @param inData
+	 * @param featureCols
+	 *            indices of the feature columns
+	 * @param otherCols
+	 *            indices of further columns, e.g. the class attribute
+	 * @return iterator over the rows, to be closed after use
+	 */
+	static CloseableRowIterator readColumns(BufferedDataTable inData, int[] featureCols, int... otherCols) {
+		int[] columns = Arrays.copyOf(featureCols, featureCols.length + otherCols.length);
+		System.arraycopy(otherCols, 0, columns, featureCols.length, otherCols.length);
+		return inData.filter(TableFilter.materializeCols(columns));
+	}
+
+	/**
+	 * Create the N empty buckets covering the range of the attribute.
+	 * 
+	 * @throws InvalidSettingsException
+	 */
+	void initBuckets() throws InvalidSettingsException {
+		this.initGrid();
+		this.createBuckets();
+	}
+
+	/**
+	 * Determine the range of the attribute and the number N of initial
+	 * buckets without creating the buckets, e.g. to count the values in a
+	 * {@link CountTensor}.
+	 * 
+	 * @throws InvalidSettingsException
+	 */
+	void initGrid() throws InvalidSettingsException {
+
+		// get smallest and largest value of the feature (unless fixed)
 		DataTableSpec inSpec = this.inData.getDataTableSpec();
-		DataColumnDomain attributeRange = inSpec.getColumnSpec(getColIndex(this.feature)).getDomain();
-		double low = ((DoubleValue) attributeRange.getLowerBound()).getDoubleValue();
-		double upp = ((DoubleValue) attributeRange.getUpperBound()).getDoubleValue();
+		if (!this.fixedGrid) {
+			DataColumnDomain attributeRange = inSpec.getColumnSpec(getColIndex(this.feature)).getDomain();
+			if (!attributeRange.hasBounds())
+				throw new InvalidSettingsException("No domain bounds for feature: " + this.feature);
+			this.low = ((DoubleValue) attributeRange.getLowerBound()).getDoubleValue();
+			this.upp = ((DoubleValue) attributeRange.getUpperBound()).getDoubleValue();
+		}
 
 		// get data type of feature (integer or double)
-		String type = inSpec.getColumnSpec(getColIndex(this.feature)).getType().getCellClass().getSimpleName();
-
-		// determine N
-		int N = 100;
-		switch (type) {
-
-		// for integers determine the range and use the range as N if it's
-		// smaller than 100
-		case "IntCell":
-			int r = (int) Math.ceil(upp - low);
-			if (r < 100)
-				N = r;
-			else
-				N = 100;
-			break;
-
-		// for doubles, always set to 100
-		case "DoubleCell":
-			N = 100;
-			break;
-		default:
-			throw new InvalidSettingsException("Invalid Discretization column: " + type);
+		DataType dataType = inSpec.getColumnSpec(getColIndex(this.feature)).getType();
+		if (!dataType.isCompatible(DoubleValue.class))
+			throw new InvalidSettingsException("Invalid Discretization column: " + dataType);
+		this.intFeature = dataType.isCompatible(IntValue.class);
+
+		// determine N, for integers use the range as N if it's smaller than
+		// the resolution
+		int N = this.resolution;
+		if (dataType.isCompatible(LongValue.class)) {
+			double r = Math.ceil(this.upp - this.low);
+			if (r < N)
+				N = (int) r;
+		}
+		this.N = N;
+	}
+
+	/**
+	 * @return number of initial buckets of the grid
+	 */
+	int getNumBuckets() {
+		if (this.upperBounds != null)
+			return this.upperBounds.length + 1;
+		return Math.max(this.N, 1);
+	}
+
+	/**
+	 * Create the initial buckets of the grid and fill them with the counts of
+	 * the feature in a tensor
+	 * 
+	 * @param tensor
+	 * @param feature
+	 *            position of the feature in the tensor
+	 */
+	void fillFrom(CountTensor tensor, int feature) {
+		this.buckets.clear();
+		this.createBuckets();
+		for (int b = 0; b < this.buckets.size(); b++) {
+			for (int c = 0; c < tensor.getNumClasses(); c++) {
+				long count = tensor.get(feature, b, c);
+				if (count != 0)
+					this.buckets.get(b).add(c, count);
+			}
+		}
+	}
+
+	/**
+	 * Create the N empty buckets of the grid between the smallest and largest
+	 * value
+	 */
+	private void createBuckets() {
+
+		// equal-frequency grid with the given upper bounds
+		if (this.upperBounds != null) {
+			for (int i = 0; i <= this.upperBounds.length; i++) {
+				Range<Double> range;
+				if (this.upperBounds.length == 0)
+					range = Range.all();
+				else if (i == 0)
+					range = Range.atMost(this.upperBounds[0]);
+				else if (i == this.upperBounds.length)
+					range = Range.greaterThan(this.upperBounds[i - 1]);
+				else
+					range = Range.openClosed(this.upperBounds[i - 1], this.upperBounds[i]);
+				this.buckets.add(new Bucket(range, this.classes));
+			}
+			return;
 		}
 
 		// calculate size of each sub-interval
-		double interval = (upp - low) / N;
+		double interval = (this.upp - this.low) / this.N;
 
 		// add empty buckets defined by lower and upper bound
 		Range<Double> range;
-		double lower = round(low);
-		for (int i = 0; i < N; i++) {
+		double lower = round(this.low);
+		for (int i = 0; i < this.N; i++) {
 
 			// first bucket is open infinite interval (-infinity, a]
 			if (i == 0)
 				range = Range.atMost(round(lower + interval));
 
 			// last bucket is an open infinite interval (a, +infinity)
-			else if (i == (N - 1))
+			else if (i == (this.N - 1))
 				range = Range.greaterThan(round(lower));
 
 			// all other buckets are half-open intervals (a, b]
@@ -101,45 +685,231 @@ public class BucketList {
 				range = Range.openClosed(round(lower), round(lower + interval));
 
 			// create bucket
-			this.buckets.add(new Bucket(range));
+			this.buckets.add(new Bucket(range, this.classes));
 			lower += interval;
 		}
 
 		// handle zero-variance attributes
-		if (N == 0) {
+		if (this.N == 0) {
 			range = Range.all();
-			this.buckets.add(new Bucket(range));
+			this.buckets.add(new Bucket(range, this.classes));
 		}
+	}
 
-		// loop over instances
-		for (DataRow r : this.inData) {
+	/**
+	 * Fix the bounds of the grid of the initial buckets instead of taking them
+	 * from the domain of the feature, so that bucket lists filled from
+	 * different partitions of a table share the same grid and can be combined
+	 * (see {@link #addCounts(BucketList, int[])}). Must be called before the
+	 * buckets are filled.
+	 * 
+	 * @param low
+	 *            smallest value of the grid
+	 * @param upp
+	 *            largest value of the grid
+	 */
+	public void setGridBounds(double low, double upp) {
+		this.low = low;
+		this.upp = upp;
+		this.fixedGrid = true;
+	}
 
-			// get class value (ignore if missing)
-			DataCell c = r.getCell(getColIndex(this.classAttr));
-			if (c.isMissing())
-				continue;
+	/**
+	 * Set the grid of the initial buckets. With {@link Grid#EQUAL_FREQUENCY}
+	 * the buckets are seeded from a quantile sketch built while filling the
+	 * buckets, so that they contain roughly the same number of values (see
+	 * {@link QuantileSketch}). With {@link Grid#DISTINCT_VALUES} each distinct
+	 * value gets its own bucket, as long as there are at most as many distinct
+	 * values as the resolution, otherwise the equal-width grid is used (see
+	 * {@link AdaptiveHistogram}). Must be called before the buckets are
+	 * filled.
+	 * 
+	 * @param grid
+	 */
+	public void setGrid(Grid grid) {
+		this.grid = grid;
+	}
 
-			// get double value of feature (ignore if missing)
-			DataCell val = r.getCell(getColIndex(this.feature));
-			if (val.isMissing())
-				continue;
-			double x = ((DoubleValue) val).getDoubleValue();
+	/**
+	 * Set the largest number of initial buckets. Must be called before the
+	 * buckets are filled.
+	 * 
+	 * @param resolution
+	 *            at least 1
+	 */
+	public void setResolution(int resolution) {
+		if (resolution < 1)
+			throw new IllegalArgumentException("Resolution of " + this.feature + " must be at least 1: " + resolution);
+		this.resolution = resolution;
+	}
+
+	/**
+	 * @return largest number of initial buckets
+	 */
+	public int getResolution() {
+		return this.resolution;
+	}
 
-			// map in interval [0, 1]
-			double z = (x - low) / (upp - low);
+	/**
+	 * Create the empty initial buckets of an equal-frequency or distinct-value
+	 * grid
+	 * 
+	 * @param low
+	 *            smallest value of the feature
+	 * @param upp
+	 *            largest value of the feature
+	 * @param upperBounds
+	 *            increasing upper bounds of the buckets, except the unbounded
+	 *            last bucket
+	 */
+	void setUpperBounds(double low, double upp, double[] upperBounds) {
+		this.low = low;
+		this.upp = upp;
+		this.N = upperBounds.length + 1;
+		this.upperBounds = upperBounds;
+		if (this.inData != null)
+			this.intFeature = this.inData.getDataTableSpec().getColumnSpec(getColIndex(this.feature)).getType()
+					.isCompatible(IntValue.class);
+		this.buckets.clear();
+		this.createBuckets();
+	}
 
-			// choose the correct bucket
-			int b;
-			if (z <= 0)
-				b = 0;
-			else
-				b = (int) Math.ceil(((N * z) - 1));
+	/**
+	 * @param other
+	 * @return true if the initial buckets of the other bucket list have the
+	 *         same grid
+	 */
+	public boolean hasSameGrid(BucketList other) {
+		return Double.compare(this.low, other.low) == 0 && Double.compare(this.upp, other.upp) == 0
+				&& this.N == other.N && this.intFeature == other.intFeature
+				&& this.buckets.size() == other.buckets.size() && Arrays.equals(this.upperBounds, other.upperBounds);
+	}
 
-			// put in bucket
-			this.buckets.get(b).add(c);
+	/**
+	 * Add the class frequencies of the initial buckets of another bucket list
+	 * with the same grid to the initial buckets of this list. As the counts
+	 * are additive, the result equals filling the buckets with the rows of
+	 * both lists.
+	 * 
+	 * @param other
+	 *            bucket list with the same grid
+	 * @param classMap
+	 *            the ordinal in the class dictionary of this list of each
+	 *            ordinal of the class dictionary of the other list
+	 */
+	public void addCounts(BucketList other, int[] classMap) {
+		this.addCounts(other, classMap, 1);
+	}
+
+	/**
+	 * Add the class frequencies of the initial buckets of another bucket list
+	 * with the same grid to the initial buckets of this list, or subtract
+	 * them for a negative sign
+	 * 
+	 * @param other
+	 *            bucket list with the same grid
+	 * @param classMap
+	 *            the ordinal in the class dictionary of this list of each
+	 *            ordinal of the class dictionary of the other list, null if
+	 *            both lists share the same class dictionary
+	 * @param sign
+	 *            1 to add the frequencies, -1 to subtract them
+	 */
+	public void addCounts(BucketList other, int[] classMap, long sign) {
+		if (!this.hasSameGrid(other))
+			throw new IllegalArgumentException("Different grids of the initial buckets of " + this.feature);
+		for (int i = 0; i < this.buckets.size(); i++) {
+			ClassFrequencies freqs = other.buckets.get(i).getClassFreqTable();
+			for (int slot = 0; slot < freqs.slots(); slot++) {
+				int c = freqs.classAt(slot);
+				if (c >= 0)
+					this.buckets.get(i).add(classMap == null ? c : classMap[c], sign * freqs.countAt(slot));
+			}
 		}
 	}
 
+	/**
+	 * Add a feature value with the ordinal of its (non-missing) class value to
+	 * the matching bucket, or retract it for a negative delta. Missing feature
+	 * values are ignored.
+	 * 
+	 * @param val
+	 * @param classIndex
+	 * @param delta
+	 */
+	private void add(DataCell val, int classIndex, long delta) {
+
+		// get double value of feature (ignore if missing)
+		if (val.isMissing())
+			return;
+		this.add(((DoubleValue) val).getDoubleValue(), classIndex, delta);
+	}
+
+	/**
+	 * Add a feature value with the ordinal of its class to the matching
+	 * bucket, or retract it for a negative delta
+	 * 
+	 * @param x
+	 * @param classIndex
+	 * @param delta
+	 */
+	void add(double x, int classIndex, long delta) {
+		this.buckets.get(this.bucketIndex(x)).add(classIndex, delta);
+	}
+
+	/**
+	 * @param x
+	 * @return position of the initial bucket of the value
+	 */
+	int bucketIndex(double x) {
+
+		// equal-frequency or distinct-value grid: first bucket whose upper
+		// bound is not smaller than the value (NaN values go to the first
+		// bucket)
+		if (this.upperBounds != null) {
+			int b = 0;
+			if (!Double.isNaN(x)) {
+				int lo = 0;
+				int hi = this.upperBounds.length;
+				while (lo < hi) {
+					int mid = (lo + hi) >>> 1;
+					if (this.upperBounds[mid] < x)
+						lo = mid + 1;
+					else
+						hi = mid;
+				}
+				b = lo;
+			}
+			return b;
+		}
+
+		return (int) BucketIndexKernel.equalWidthIndex(x, this.low, this.upp - this.low, this.N,
+				this.getNumBuckets() - 1);
+	}
+
+	/**
+	 * Compute the initial buckets of a batch of values at once. For the
+	 * equal-width grid this uses the vectorized kernel if it is available (see
+	 * {@link BucketIndexKernel}).
+	 * 
+	 * @param x
+	 *            the values
+	 * @param length
+	 *            number of values
+	 * @param indices
+	 *            receives the position of the initial bucket of each value
+	 */
+	void bucketIndices(double[] x, int length, int[] indices) {
+		if (this.upperBounds != null) {
+			for (int i = 0; i < length; i++) {
+				indices[i] = this.bucketIndex(x[i]);
+			}
+			return;
+		}
+		BucketIndexKernel.get().equalWidthIndices(x, length, this.low, this.upp - this.low, this.N,
+				this.getNumBuckets() - 1, indices);
+	}
+
 	/**
 	 * For each division identify the dominant class. Where there is no dominant
 	 * class, because no records fall into a particular sub-range or where two
@@ -169,7 +939,7 @@ public class BucketList {
 					// foregoing columns
 					if (atStart) {
 						for (int j = 0; j < i; j++) {
-							this.buckets.get(j).setDominantClass(this.buckets.get(i).getDominantClass());
+							this.buckets.get(j).setDominantClass(this.buckets.get(i).getDominantClassIndex());
 						}
 					}
 
@@ -180,8 +950,8 @@ public class BucketList {
 					else {
 
 						int newDominantIndex = i;
-						DataCell newClass = this.buckets.get(newDominantIndex).getDominantClass();
-						DataCell oldClass = this.buckets.get(lastDominantIndex).getDominantClass();
+						int newClass = this.buckets.get(newDominantIndex).getDominantClassIndex();
+						int oldClass = this.buckets.get(lastDominantIndex).getDominantClassIndex();
 
 						lastDominantIndex++;
 						newDominantIndex--;
@@ -202,13 +972,10 @@ public class BucketList {
 		}
 
 		// If count array contains no dominant classes at all, set entire array
-		// to arbitrary class
+		// to arbitrary class (the first class of the domain)
 		if (lastDominantIndex == -1) {
-			DataTableSpec inSpec = this.inData.getDataTableSpec();
-			DataColumnDomain classDomain = inSpec.getColumnSpec(getColIndex(this.classAttr)).getDomain();
-			DataCell classVal = (DataCell) classDomain.getValues().toArray()[0];
 			for (i = 0; i < this.buckets.size(); i++) {
-				this.buckets.get(i).setDominantClass(classVal);
+				this.buckets.get(i).setDominantClass(0);
 			}
 
 		}
@@ -217,7 +984,7 @@ public class BucketList {
 		// remaining columns to current class
 		else if (lastDominantIndex != (i - 1)) {
 			for (int j = lastDominantIndex; j < (i - 0); j++) { // i - 1?
-				this.buckets.get(j).setDominantClass(this.buckets.get(lastDominantIndex).getDominantClass());
+				this.buckets.get(j).setDominantClass(this.buckets.get(lastDominantIndex).getDominantClassIndex());
 			}
 		}
 
@@ -229,135 +996,96 @@ public class BucketList {
 	 */
 	public void formDivisions() {
 
-		int i = 0;
-		int j;
-		while (i < this.buckets.size()) {
-
-			// get dominant class of bucket
-			DataCell dclass = this.buckets.get(i).getDominantClass();
+		// compact the list in place: each bucket is either merged into the
+		// last division or becomes a new division
+		int n = this.buckets.size();
+		int divisions = 0;
+		for (int i = 0; i < n; i++) {
+			Bucket bucket = this.buckets.get(i);
 
 			// while dominant class of neighboring buckets is equal, merge
 			// buckets
-			j = i + 1;
-			while (j < this.buckets.size() && this.buckets.get(j).getDominantClass().equals(dclass)) {
-				this.buckets.get(i).merge(this.buckets.get(j));
-				this.buckets.remove(j);
+			if (divisions > 0 && this.buckets.get(divisions - 1).getDominantClassIndex() == bucket
+					.getDominantClassIndex()) {
+				this.buckets.get(divisions - 1).merge(bucket);
 			}
 
-			// move on to next division
-			i++;
+			// otherwise move on to next division
+			else {
+				this.buckets.set(divisions++, bucket);
+			}
 		}
+		this.buckets.subList(divisions, n).clear();
 	}
 
 	/**
-	 * Merge two divisions A division is selected for merging as follows: (1)
-	 * For each possible merge calculate the combined probability for the
+	 * Merge divisions until the number of divisions is smaller or equal than
+	 * the given maximal number. A division is selected for merging as follows:
+	 * (1) For each possible merge calculate the combined probability for the
 	 * resulting dominant class (2) Select the merge with the highest
 	 * probability
+	 * 
+	 * The merges are taken from the merge hierarchy, which is recorded on the
+	 * first call.
+	 * 
+	 * @param maxDivisions
+	 * @see MergeHierarchy
 	 */
-	public void mergeDivisions() {
-
-		// search for the merge of two buckets for which the probability of the
-		// dominant class is maximal
-		int[] bestMerge = this.selectBestMerge();
-
-		// merge both buckets and remove one from the list
-		this.buckets.get(bestMerge[0]).merge(this.buckets.get(bestMerge[1]));
-		this.buckets.remove(bestMerge[1]);
-
-		// check if dominant class for merged bucket is the same as for the
-		// previous and next bucket
-		// if yes --> merge
-		int current = bestMerge[0];
-		int prev = current - 1;
-		int next = current + 1;
-
-		// check for next division
-		if (next < this.buckets.size() && this.buckets.get(next).getDominantClass().toString()
-				.compareTo(this.buckets.get(current).getDominantClass().toString()) == 0) {
-			this.buckets.get(current).merge(this.buckets.get(next));
-			this.buckets.remove(next);
-		}
-
-		// check for previous division
-		if (prev >= 0 && this.buckets.get(prev).getDominantClass().toString()
-				.compareTo(this.buckets.get(current).getDominantClass().toString()) == 0) {
-			this.buckets.get(prev).merge(this.buckets.get(current));
-			this.buckets.remove(current);
-		}
+	public void mergeDivisions(int maxDivisions) {
+		if (this.hierarchy == null)
+			this.hierarchy = new MergeHierarchy(this.buckets);
+		this.buckets = this.hierarchy.cut(maxDivisions);
 	}
 
 	/**
-	 * Select the optimal merge, i.e., the merge for which the combined
-	 * probability for the resulting dominant class is maximal
+	 * Record the complete merge hierarchy of the divisions (see
+	 * {@link #formDivisions()}), so that the divisions for any maximal number
+	 * of divisions can be extracted with {@link #mergeDivisions(int)}.
 	 * 
-	 * @return the positions of the buckets involved in the optimal merge
+	 * @return the merge hierarchy
 	 */
-	public int[] selectBestMerge() {
-
-		// saves best possible merge of buckets (i, j)
-		// if all possible merges produce buckets with no dominant class (prob =
-		// 0),
-		// but the number of buckets should be further reduced, then merge the
-		// first and the second
-		int[] bestMerge = { 0, 1 };
-
-		// number of buckets in the list
-		int n = this.buckets.size();
-
-		// search for merge that produces the highest probability of the
-		// resulting dominant class
-		double maxProb = 0;
-		for (int i = 0; i < (n - 1); i++) {
-			int j = i + 1;
-			double prob = getDominantClassProb(this.buckets.get(i), this.buckets.get(j));
-			if (prob > maxProb) {
-				bestMerge[0] = i;
-				bestMerge[1] = j;
-				maxProb = prob;
-			}
-		}
-		return bestMerge;
+	public MergeHierarchy buildHierarchy() {
+		this.hierarchy = new MergeHierarchy(this.buckets);
+		return this.hierarchy;
 	}
 
 	/**
-	 * Calculate the combined probability/proportion of the resulting dominant
-	 * class after merging the two buckets
+	 * Freeze the fitted buckets into a compact model for mapping values to
+	 * their categories. For integer features the model uses a lookup table if
+	 * the range of the feature is small.
 	 * 
-	 * @param b1
-	 * @param b2
-	 * @return proportion of the dominant class in the merged bucket
+	 * @return the frozen model
 	 */
-	public static double getDominantClassProb(Bucket b1, Bucket b2) {
-
-		// create a new bucket
-		Bucket bucket = new Bucket(b1.getRange());
-
-		// merge new bucket with b1 and b2
-		bucket.merge(b1);
-		bucket.merge(b2);
-
-		// return probability of the dominant class
-		return bucket.determineDominantClassProb();
+	public FrozenBucketList freeze() {
+		if (this.intFeature)
+			return FrozenBucketList.freeze(this.feature, this.buckets, (int) this.low, (int) this.upp);
+		return FrozenBucketList.freeze(this.feature, this.buckets, 1, 0);
 	}
 
 	/**
-	 * @param value
-	 * @return the position of the bucket that contains the input double value.
-	 *         The position is returned as a string of the form
-	 *         "Interval_bucketNumber"
+	 * @return a copy of the bucket list with copies of its buckets, to be
+	 *         fitted without changing the counts of this list
 	 */
-	public String getCategory(double value) {
+	public BucketList copy() {
+		return this.copy(this.classes);
+	}
 
-		int category = -1;
-		int i = 0;
-		while (i < this.buckets.size() && category < 0) {
-			if (this.buckets.get(i).contains(value)) {
-				category = i;
-			}
-			i++;
+	/**
+	 * @param classes
+	 *            the class dictionary of the copy, containing the class values
+	 *            of this list with the same ordinals
+	 * @return a copy of the bucket list with copies of its buckets
+	 */
+	public BucketList copy(ClassDictionary classes) {
+		ArrayList<Bucket> copies = new ArrayList<>(this.buckets.size());
+		for (Bucket b : this.buckets) {
+			copies.add(b.copy(classes));
 		}
-		return ("Interval_" + category);
+		BucketList list = new BucketList(this.feature, this.classAttr, classes, this.low, this.upp, this.N,
+				this.intFeature, copies);
+		list.grid = this.grid;
+		list.upperBounds = this.upperBounds;
+		return list;
 	}
 
 	/**
@@ -382,13 +1110,6 @@ public class BucketList {
 		return this.buckets;
 	}
 
-	/**
-	 * @return the dominant classes
-	 */
-	public DataCell[] getDominantClasses() {
-		return this.dominantClasses;
-	}
-
 	/**
 	 * @param a
 	 * @return the value rounded to the hundreds place
@@ -397,6 +1118,64 @@ public class BucketList {
 		return Math.round(a * 100.0) / 100.0;
 	}
 
+	/**
+	 * @return the merge hierarchy, null if not recorded yet
+	 */
+	public MergeHierarchy getHierarchy() {
+		return this.hierarchy;
+	}
+
+	/**
+	 * @return the dictionary of the class values
+	 */
+	public ClassDictionary getClassDictionary() {
+		return this.classes;
+	}
+
+	/**
+	 * @return smallest value of the grid of the initial buckets
+	 */
+	public double getLow() {
+		return this.low;
+	}
+
+	/**
+	 * @return largest value of the grid of the initial buckets
+	 */
+	public double getUpp() {
+		return this.upp;
+	}
+
+	/**
+	 * @return number of initial buckets of the grid
+	 */
+	public int getN() {
+		return this.N;
+	}
+
+	/**
+	 * @return the grid setting of the initial buckets
+	 */
+	public Grid getGrid() {
+		return this.grid;
+	}
+
+	/**
+	 * @return upper bounds of the initial buckets (except the unbounded last
+	 *         one) of an equal-frequency or distinct-value grid, null for the
+	 *         equal-width grid, must not be modified
+	 */
+	double[] getUpperBounds() {
+		return this.upperBounds;
+	}
+
+	/**
+	 * @return true if the feature has integer values
+	 */
+	public boolean isIntFeature() {
+		return this.intFeature;
+	}
+
 	/**
 	 * @return the column name for this bucket
 	 */
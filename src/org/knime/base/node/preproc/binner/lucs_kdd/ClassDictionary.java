@@ -0,0 +1,142 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Maps the values of the class attribute to consecutive ordinals, so that
+ * class frequencies can be stored in primitive arrays indexed by ordinal. The
+ * dictionary is built once from the domain of the class column. Class values
+ * that are not part of the domain are appended when they are first seen.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class ClassDictionary {
+
+	// ordinal of each class value
+	private Map<DataCell, Integer> ordinals;
+
+	// class value of each ordinal
+	private ArrayList<DataCell> values;
+
+	/**
+	 * Constructor
+	 */
+	public ClassDictionary() {
+		this.ordinals = new HashMap<>();
+		this.values = new ArrayList<>();
+	}
+
+	/**
+	 * @param classSpec
+	 *            specification of the class column
+	 * @return a dictionary containing the possible values of the class column
+	 *         (in the order of the domain)
+	 */
+	public static ClassDictionary fromDomain(DataColumnSpec classSpec) {
+		ClassDictionary dictionary = new ClassDictionary();
+		Set<DataCell> domainValues = classSpec.getDomain().getValues();
+		if (domainValues != null) {
+			for (DataCell value : domainValues) {
+				dictionary.indexOf(value);
+			}
+		}
+		return dictionary;
+	}
+
+	/**
+	 * @param classVal
+	 * @return the ordinal of the class value, a new ordinal is assigned to
+	 *         unknown values
+	 */
+	public int indexOf(DataCell classVal) {
+		Integer ordinal = this.ordinals.get(classVal);
+		if (ordinal == null) {
+			ordinal = this.values.size();
+			this.ordinals.put(classVal, ordinal);
+			this.values.add(classVal);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Count the rows of each class with a pass over the class column of a
+	 * table, adding the class values that are not yet in the dictionary
+	 * 
+	 * @param inData
+	 * @param classAttr
+	 * @param exec
+	 * @return the number of rows of each class ordinal, rows with a missing
+	 *         class are not counted
+	 * @throws CanceledExecutionException
+	 */
+	long[] count(BufferedDataTable inData, String classAttr, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		int classCol = inData.getDataTableSpec().findColumnIndex(classAttr);
+		long[] counts = new long[this.size()];
+		long rowCount = inData.size();
+		long row = 0;
+		try (CloseableRowIterator rows = BucketList.readColumns(inData, new int[0], classCol)) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+				exec.checkCanceled();
+				exec.setProgress(row++ / (double) rowCount);
+				DataCell c = r.getCell(classCol);
+				if (c.isMissing())
+					continue;
+				int classIndex = this.indexOf(c);
+				if (classIndex >= counts.length)
+					counts = Arrays.copyOf(counts, classIndex + 1);
+				counts[classIndex]++;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @return a copy of the dictionary with the same ordinals
+	 */
+	public ClassDictionary copy() {
+		ClassDictionary dictionary = new ClassDictionary();
+		for (DataCell value : this.values) {
+			dictionary.indexOf(value);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * @param classVal
+	 * @return the ordinal of the class value, -1 for unknown values
+	 */
+	public int find(DataCell classVal) {
+		Integer ordinal = this.ordinals.get(classVal);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the class value for the ordinal
+	 */
+	public DataCell get(int ordinal) {
+		return this.values.get(ordinal);
+	}
+
+	/**
+	 * @return the number of class values
+	 */
+	public int size() {
+		return this.values.size();
+	}
+}
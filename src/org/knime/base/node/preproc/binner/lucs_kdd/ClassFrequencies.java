@@ -0,0 +1,199 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Arrays;
+
+/**
+ * Frequency table of the class values in a bucket, indexed by class ordinal
+ * (see {@link ClassDictionary}). For class attributes with few values the
+ * frequencies are stored in a dense array, for class attributes with many
+ * values only the non-zero frequencies are stored in an open-addressing hash
+ * table.
+ * 
+ * The representation is chosen by the number of class values known in
+ * advance, and a dense table switches to the hash table as soon as a class
+ * ordinal beyond {@link #MAX_DENSE_CLASSES} is added. Class attributes with
+ * many values often have no possible values in their domain, so the number of
+ * classes is only known from the rows.
+ * 
+ * The entries of a table are visited through its slots: for each slot
+ * {@link #classAt(int)} returns the class ordinal stored in the slot (or -1 if
+ * the slot is empty) and {@link #countAt(int)} its frequency.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class ClassFrequencies {
+
+	// largest number of class values for which a dense table is used
+	static final int MAX_DENSE_CLASSES = 256;
+
+	// class ordinal + 1 of each slot (0 marks an empty slot), null for a
+	// dense table indexed by class ordinal
+	private int[] keys;
+
+	// frequency of each slot
+	private long[] counts;
+
+	// number of used slots of the hash table
+	private int used;
+
+	/**
+	 * @param numClasses
+	 *            number of class values known in advance
+	 */
+	private ClassFrequencies(int numClasses) {
+		if (numClasses <= MAX_DENSE_CLASSES) {
+			this.counts = new long[numClasses];
+		} else {
+			this.keys = new int[8];
+			this.counts = new long[8];
+		}
+	}
+
+	/**
+	 * @param numClasses
+	 *            number of class values known in advance
+	 * @return an empty frequency table suited for the number of class values
+	 */
+	static ClassFrequencies create(int numClasses) {
+		return new ClassFrequencies(numClasses);
+	}
+
+	/**
+	 * Add to the frequency of a class
+	 * 
+	 * @param classIndex
+	 * @param delta
+	 * @return the new frequency of the class
+	 */
+	long add(int classIndex, long delta) {
+		if (this.keys == null) {
+			if (classIndex < this.counts.length) {
+				this.counts[classIndex] += delta;
+				return this.counts[classIndex];
+			}
+
+			// grow the dense table up to its largest size, then switch to
+			// the hash table
+			if (classIndex >= MAX_DENSE_CLASSES) {
+				this.toSparse();
+			} else {
+				this.counts = Arrays.copyOf(this.counts,
+						Math.min(Math.max(classIndex + 1, 2 * this.counts.length), MAX_DENSE_CLASSES));
+				this.counts[classIndex] += delta;
+				return this.counts[classIndex];
+			}
+		}
+		int slot = this.find(classIndex);
+		if (this.keys[slot] == 0) {
+
+			// insert new class, keep the load factor below 1/2
+			if (2 * (this.used + 1) > this.keys.length) {
+				this.rehash(2 * this.keys.length);
+				slot = this.find(classIndex);
+			}
+			this.keys[slot] = classIndex + 1;
+			this.used++;
+		}
+		this.counts[slot] += delta;
+		return this.counts[slot];
+	}
+
+	/**
+	 * @param classIndex
+	 * @return the frequency of the class
+	 */
+	long get(int classIndex) {
+		if (this.keys == null)
+			return classIndex < this.counts.length ? this.counts[classIndex] : 0;
+		int slot = this.find(classIndex);
+		return this.keys[slot] == 0 ? 0 : this.counts[slot];
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	int slots() {
+		return this.counts.length;
+	}
+
+	/**
+	 * @param slot
+	 * @return the class ordinal stored in the slot, -1 if the slot is empty
+	 */
+	int classAt(int slot) {
+		if (this.counts[slot] == 0)
+			return -1;
+		return this.keys == null ? slot : this.keys[slot] - 1;
+	}
+
+	/**
+	 * @param slot
+	 * @return the frequency stored in the slot
+	 */
+	long countAt(int slot) {
+		return this.counts[slot];
+	}
+
+	/**
+	 * Move the non-zero frequencies of the dense table into a hash table
+	 */
+	private void toSparse() {
+		long[] dense = this.counts;
+		int nonZero = 0;
+		for (long count : dense) {
+			if (count != 0)
+				nonZero++;
+		}
+		int capacity = 8;
+		while (2 * (nonZero + 1) > capacity) {
+			capacity *= 2;
+		}
+		this.keys = new int[capacity];
+		this.counts = new long[capacity];
+		this.used = 0;
+		for (int c = 0; c < dense.length; c++) {
+			if (dense[c] != 0) {
+				int slot = this.find(c);
+				this.keys[slot] = c + 1;
+				this.counts[slot] = dense[c];
+				this.used++;
+			}
+		}
+	}
+
+	/**
+	 * @param classIndex
+	 * @return the slot containing the class or the empty slot where it would
+	 *         be inserted
+	 */
+	private int find(int classIndex) {
+		int mask = this.keys.length - 1;
+		int hash = classIndex * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (this.keys[slot] != 0 && this.keys[slot] != classIndex + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Move all entries into tables of the given capacity
+	 * 
+	 * @param capacity
+	 *            a power of two
+	 */
+	private void rehash(int capacity) {
+		int[] oldKeys = this.keys;
+		long[] oldCounts = this.counts;
+		this.keys = new int[capacity];
+		this.counts = new long[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = this.find(oldKeys[i] - 1);
+				this.keys[slot] = oldKeys[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+}
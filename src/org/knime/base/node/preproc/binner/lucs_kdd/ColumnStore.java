@@ -0,0 +1,332 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Primitive copy of the values of several features and the class ordinals of
+ * a table, extracted with a single pass, for stages that read the values more
+ * than once (e.g. the batches of the wide-table mode). Later passes then read
+ * the primitive columns instead of decoding the table again.
+ *
+ * Each feature is a column of doubles and the class attribute a column of
+ * ordinals (-1 for missing classes). Missing feature values are stored as a
+ * NaN with a distinct bit pattern, see {@link #isMissing(int, int)}. The
+ * columns are kept in arrays on the heap as long as they fit into the heap
+ * budget; the remaining columns are spilled to a memory-mapped temporary file,
+ * mapped in segments of 1 GB. Closing the store unmaps the segments before the
+ * file is deleted, since a file that is still mapped cannot be deleted on
+ * Windows.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class ColumnStore implements AutoCloseable {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(ColumnStore.class);
+
+	// bit pattern of a missing value
+	private static final long MISSING_BITS = 0x7ff80000000000ffL;
+	static final double MISSING = Double.longBitsToDouble(MISSING_BITS);
+
+	// size of a mapped segment of the spill file
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+	// number of rows
+	private final int numRows;
+
+	// class ordinals of the rows
+	private final int[] classes;
+
+	// values of the features kept on the heap, null for spilled features
+	private final double[][] values;
+
+	// position of the spilled features in the spill file (-1 for features
+	// on the heap)
+	private final long[] spillOffsets;
+
+	// spill file and its mapped segments, null if no feature is spilled
+	private File spillFile;
+	private MappedByteBuffer[] segments;
+
+	/**
+	 * @param numRows
+	 * @param numFeatures
+	 */
+	private ColumnStore(int numRows, int numFeatures) {
+		this.numRows = numRows;
+		this.classes = new int[numRows];
+		this.values = new double[numFeatures][];
+		this.spillOffsets = new long[numFeatures];
+	}
+
+	/**
+	 * Extract the values of the features and the class ordinals of a table
+	 * with a single pass over the table (reading only these columns)
+	 *
+	 * @param inData
+	 * @param features
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary, extended by class values missing in
+	 *            the domain
+	 * @param maxHeapBytes
+	 *            heap budget of the columns, the other columns are spilled
+	 * @param hashes
+	 *            receives every row, null if no content hash is taken
+	 * @param exec
+	 * @return the extracted columns, null if the table has too many rows for
+	 *         primitive arrays
+	 * @throws CanceledExecutionException
+	 * @throws IOException
+	 */
+	static ColumnStore extract(BufferedDataTable inData, String[] features, String classAttr,
+			ClassDictionary classes, long maxHeapBytes, ContentHash hashes, ExecutionMonitor exec)
+			throws CanceledExecutionException, IOException {
+		long rowCount = inData.size();
+		if (rowCount > Integer.MAX_VALUE - 8)
+			return null;
+		int numRows = (int) rowCount;
+		ColumnStore store = new ColumnStore(numRows, features.length);
+
+		// keep the columns on the heap within the budget and spill the others
+		long heapBytes = 4L * numRows;
+		long spillBytes = 0;
+		for (int f = 0; f < features.length; f++) {
+			if (heapBytes + 8L * numRows <= maxHeapBytes) {
+				store.values[f] = new double[numRows];
+				store.spillOffsets[f] = -1;
+				heapBytes += 8L * numRows;
+			} else {
+				store.spillOffsets[f] = spillBytes;
+				spillBytes += 8L * numRows;
+			}
+		}
+		try {
+			if (spillBytes > 0)
+				store.map(spillBytes);
+
+			// copy the values row by row
+			DataTableSpec inSpec = inData.getDataTableSpec();
+			int[] featureCols = new int[features.length];
+			for (int f = 0; f < features.length; f++) {
+				featureCols[f] = inSpec.findColumnIndex(features[f]);
+			}
+			int classCol = inSpec.findColumnIndex(classAttr);
+			int row = 0;
+			try (CloseableRowIterator rows = BucketList.readColumns(inData, featureCols,
+					hashes == null ? new int[] { classCol } : hashes.withColumns(classCol))) {
+				while (rows.hasNext()) {
+					DataRow r = rows.next();
+					exec.checkCanceled();
+					exec.setProgress(row / (double) numRows);
+					if (hashes != null)
+						hashes.add(r);
+					DataCell c = r.getCell(classCol);
+					store.classes[row] = c.isMissing() ? -1 : classes.indexOf(c);
+					for (int f = 0; f < features.length; f++) {
+						DataCell val = r.getCell(featureCols[f]);
+						store.set(f, row, val.isMissing() ? MISSING : ((DoubleValue) val).getDoubleValue());
+					}
+					row++;
+				}
+			}
+		} catch (IOException | CanceledExecutionException | RuntimeException e) {
+			store.close();
+			throw e;
+		}
+		return store;
+	}
+
+	/**
+	 * Create the spill file and map it into memory
+	 *
+	 * @param size
+	 *            size of the file in bytes
+	 * @throws IOException
+	 */
+	private void map(long size) throws IOException {
+		this.spillFile = File.createTempFile("lucs-kdd-columns", ".bin");
+		this.spillFile.deleteOnExit();
+		int numSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		this.segments = new MappedByteBuffer[numSegments];
+		try (RandomAccessFile file = new RandomAccessFile(this.spillFile, "rw")) {
+			file.setLength(size);
+			FileChannel channel = file.getChannel();
+			for (int s = 0; s < numSegments; s++) {
+				long position = (long) s << SEGMENT_SHIFT;
+				this.segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+						Math.min(SEGMENT_MASK + 1, size - position));
+			}
+		}
+	}
+
+	/**
+	 * @param feature
+	 * @param row
+	 * @param x
+	 */
+	private void set(int feature, int row, double x) {
+		if (this.values[feature] != null) {
+			this.values[feature][row] = x;
+			return;
+		}
+		long offset = this.spillOffsets[feature] + 8L * row;
+		this.segments[(int) (offset >>> SEGMENT_SHIFT)].putDouble((int) (offset & SEGMENT_MASK), x);
+	}
+
+	/**
+	 * @param feature
+	 *            position of the feature in the store
+	 * @param row
+	 * @return the value of the feature in the row
+	 */
+	double get(int feature, int row) {
+		if (this.values[feature] != null)
+			return this.values[feature][row];
+		long offset = this.spillOffsets[feature] + 8L * row;
+		return this.segments[(int) (offset >>> SEGMENT_SHIFT)].getDouble((int) (offset & SEGMENT_MASK));
+	}
+
+	/**
+	 * Copy the values of a feature in consecutive rows
+	 *
+	 * @param feature
+	 *            position of the feature in the store
+	 * @param from
+	 *            first row
+	 * @param length
+	 *            number of rows
+	 * @param dst
+	 *            receives the values
+	 */
+	void get(int feature, int from, int length, double[] dst) {
+		if (this.values[feature] != null) {
+			System.arraycopy(this.values[feature], from, dst, 0, length);
+			return;
+		}
+		long offset = this.spillOffsets[feature] + 8L * from;
+		int done = 0;
+		while (done < length) {
+			MappedByteBuffer segment = this.segments[(int) (offset >>> SEGMENT_SHIFT)];
+			int position = (int) (offset & SEGMENT_MASK);
+			int n = Math.min(length - done, (segment.capacity() - position) / 8);
+			ByteBuffer view = segment.duplicate();
+			view.position(position);
+			view.asDoubleBuffer().get(dst, done, n);
+			done += n;
+			offset += 8L * n;
+		}
+	}
+
+	/**
+	 * @param x
+	 *            a value of the store
+	 * @return true if the value is missing
+	 */
+	static boolean isMissing(double x) {
+		return Double.doubleToRawLongBits(x) == MISSING_BITS;
+	}
+
+	/**
+	 * @param feature
+	 *            position of the feature in the store
+	 * @param row
+	 * @return true if the value of the feature in the row is missing
+	 */
+	boolean isMissing(int feature, int row) {
+		return isMissing(this.get(feature, row));
+	}
+
+	/**
+	 * @param row
+	 * @return the class ordinal of the row, -1 if the class is missing
+	 */
+	int getClassIndex(int row) {
+		return this.classes[row];
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	int getNumRows() {
+		return this.numRows;
+	}
+
+	/**
+	 * Unmap the segments and delete the spill file. The store must not be
+	 * read afterwards. If the segments cannot be unmapped explicitly, they are
+	 * released by the garbage collector and the file may only be deleted when
+	 * the JVM exits.
+	 */
+	@Override
+	public void close() {
+		MappedByteBuffer[] segments = this.segments;
+		this.segments = null;
+		boolean unmapped = true;
+		if (segments != null) {
+			for (MappedByteBuffer segment : segments) {
+				unmapped &= unmap(segment);
+			}
+		}
+		if (this.spillFile != null && !this.spillFile.delete()) {
+			LOGGER.warn("Could not delete the spill file " + this.spillFile
+					+ (unmapped ? "" : " (its mapping could not be released)")
+					+ ", it is deleted when KNIME exits");
+			this.spillFile.deleteOnExit();
+		}
+		this.spillFile = null;
+	}
+
+	/**
+	 * Release the mapping of a buffer right away instead of when the buffer
+	 * is garbage collected. There is no public API for this, so the cleaner
+	 * of the buffer is invoked reflectively (through sun.misc.Unsafe on Java 9
+	 * and later, through the cleaner of the buffer on Java 8).
+	 * 
+	 * @param buffer
+	 *            a mapped buffer that is not used anymore
+	 * @return true if the mapping was released
+	 */
+	private static boolean unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not available before Java 9
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner == null)
+				return false;
+			cleaner.getClass().getMethod("clean").invoke(cleaner);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.debug("Could not unmap the spill file: " + e.getMessage());
+			return false;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Hash of the content of several feature columns, taken while the rows are
+ * read for the fit. The hash of a feature covers the value of the feature and
+ * the class value of every row in the order of the rows, so it changes if the
+ * feature column, the class column or the rows of the table change, but not
+ * if other columns change. The hash of each feature is independent of the
+ * other hashed features, so the features can be hashed in any pass over the
+ * table, as long as every row is added exactly once.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class ContentHash {
+
+	// multiplier of the row hashes
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	// bits of a missing value or class
+	private static final long MISSING = 0x7FF80000DEADBEEFL;
+
+	// column of each feature and of the class attribute in the table
+	private final int[] columns;
+	private final int classCol;
+
+	// hash of each feature
+	private final long[] hashes;
+
+	// number of added rows
+	private long rows;
+
+	/**
+	 * @param inSpec
+	 * @param features
+	 * @param classAttr
+	 */
+	ContentHash(DataTableSpec inSpec, String[] features, String classAttr) {
+		this.columns = new int[features.length];
+		for (int f = 0; f < features.length; f++) {
+			this.columns[f] = inSpec.findColumnIndex(features[f]);
+		}
+		this.classCol = inSpec.findColumnIndex(classAttr);
+		this.hashes = new long[features.length];
+	}
+
+	/**
+	 * @param otherCols
+	 *            indices of columns read anyway
+	 * @return the given columns followed by the hashed columns, to read them
+	 *         in the same pass (see
+	 *         {@link BucketList#readColumns(BufferedDataTable, int[], int...)})
+	 */
+	int[] withColumns(int... otherCols) {
+		int[] cols = Arrays.copyOf(otherCols, otherCols.length + this.columns.length + 1);
+		System.arraycopy(this.columns, 0, cols, otherCols.length, this.columns.length);
+		cols[cols.length - 1] = this.classCol;
+		return cols;
+	}
+
+	/**
+	 * Add a row to the hash of each feature
+	 *
+	 * @param r
+	 *            a row containing the hashed columns
+	 */
+	void add(DataRow r) {
+		DataCell c = r.getCell(this.classCol);
+		long classBits = c.isMissing() ? MISSING : c.hashCode();
+		for (int f = 0; f < this.columns.length; f++) {
+			DataCell val = r.getCell(this.columns[f]);
+			long bits = val.isMissing() ? MISSING : Double.doubleToLongBits(((DoubleValue) val).getDoubleValue());
+			long h = (this.hashes[f] ^ mix(bits + classBits * MULTIPLIER)) * MULTIPLIER;
+			this.hashes[f] = h ^ (h >>> 32);
+		}
+		this.rows++;
+	}
+
+	/**
+	 * @param x
+	 * @return the bits of x spread over the whole long (finalizer of
+	 *         MurmurHash3)
+	 */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+		x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return x ^ (x >>> 33);
+	}
+
+	/**
+	 * @param rowCount
+	 *            number of rows of the table
+	 * @return true if every row of the table was added
+	 */
+	boolean isComplete(long rowCount) {
+		return this.rows == rowCount;
+	}
+
+	/**
+	 * Hash the features with a separate pass over the table, reading only the
+	 * hashed columns. Rows added before are discarded.
+	 *
+	 * @param inData
+	 * @param exec
+	 * @throws CanceledExecutionException
+	 */
+	void scan(BufferedDataTable inData, ExecutionMonitor exec) throws CanceledExecutionException {
+		Arrays.fill(this.hashes, 0);
+		this.rows = 0;
+		long rowCount = inData.size();
+		try (CloseableRowIterator rows = BucketList.readColumns(inData, this.columns, this.classCol)) {
+			while (rows.hasNext()) {
+				exec.checkCanceled();
+				exec.setProgress(this.rows / (double) rowCount);
+				this.add(rows.next());
+			}
+		}
+	}
+
+	/**
+	 * @param f
+	 *            position of a feature
+	 * @return the hash of the feature
+	 */
+	long get(int f) {
+		return this.hashes[f];
+	}
+}
@@ -0,0 +1,300 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * Class frequencies of the initial buckets of a batch of features in a single
+ * flat array indexed by (feature, bucket, class), for tables with many
+ * features. Filling the buckets of a {@link BucketList} directly keeps a
+ * {@link Bucket} object with its own frequency table per bucket, so the
+ * object headers and hash tables dominate the memory of wide tables. The
+ * tensor needs 8 bytes per bucket and class, and the buckets of a feature are
+ * only created from its slice of the tensor right before they are merged
+ * (see {@link BucketList#fillFrom(CountTensor, int)}).
+ *
+ * The number of classes is fixed when the tensor is created, so the class
+ * dictionary should be complete before the features are split into batches
+ * (e.g. from the domain or with a pass over the class column). A fill is
+ * aborted when a row has a class beyond this number, so that the caller can
+ * split the features again for the larger number of classes.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class CountTensor {
+
+	// largest number of counts of a tensor
+	private static final int MAX_COUNTS = Integer.MAX_VALUE - 8;
+
+	// number of values whose buckets are computed at once
+	private static final int BATCH_SIZE = 1 << 12;
+
+	// counts of each (feature, bucket, class), the counts of a feature start
+	// at offsets[feature] * numClasses
+	private final long[] counts;
+	private final int[] offsets;
+	private final int numClasses;
+
+	/**
+	 * @param lists
+	 *            bucket lists with the grid of their initial buckets (see
+	 *            {@link BucketList#initGrid()})
+	 * @param numClasses
+	 *            number of classes
+	 */
+	private CountTensor(BucketList[] lists, int numClasses) {
+		this.offsets = new int[lists.length + 1];
+		this.numClasses = Math.max(numClasses, 1);
+		long numCounts = 0;
+		for (int f = 0; f < lists.length; f++) {
+			numCounts += (long) lists[f].getNumBuckets() * this.numClasses;
+			if (numCounts > MAX_COUNTS)
+				throw new IllegalArgumentException("Too many counts for a tensor: " + numCounts);
+			this.offsets[f + 1] = this.offsets[f] + lists[f].getNumBuckets();
+		}
+
+		// all indices (offsets[f] + bucket) * numClasses + class are below
+		// MAX_COUNTS
+		this.counts = new long[(int) numCounts];
+	}
+
+	/**
+	 * @param numBuckets
+	 * @param numClasses
+	 * @return size of the counts of a feature in bytes
+	 */
+	static long bytesPerFeature(int numBuckets, int numClasses) {
+		return 8L * numBuckets * Math.max(numClasses, 1);
+	}
+
+	/**
+	 * Split bucket lists into batches whose counts fit into the memory budget
+	 *
+	 * @param lists
+	 *            bucket lists with the grid of their initial buckets (see
+	 *            {@link BucketList#initGrid()})
+	 * @param numClasses
+	 *            number of classes
+	 * @param maxBytes
+	 *            memory budget of the counts of a batch, each batch contains
+	 *            at least one feature
+	 * @return the positions of the lists of each batch
+	 * @throws InvalidSettingsException
+	 *             if the counts of a single feature exceed the largest array
+	 */
+	static List<int[]> batches(BucketList[] lists, int numClasses, long maxBytes) throws InvalidSettingsException {
+		List<int[]> batches = new ArrayList<>();
+		int from = 0;
+		long bytes = 0;
+		long numCounts = 0;
+		for (int f = 0; f < lists.length; f++) {
+			long featureBytes = bytesPerFeature(lists[f].getNumBuckets(), numClasses);
+			if (featureBytes / 8 > MAX_COUNTS)
+				throw new InvalidSettingsException("Too many initial buckets and classes for the wide-table mode: "
+						+ lists[f].getFeature());
+			if (f > from && (bytes + featureBytes > maxBytes || numCounts + featureBytes / 8 > MAX_COUNTS)) {
+				batches.add(range(from, f));
+				from = f;
+				bytes = 0;
+				numCounts = 0;
+			}
+			bytes += featureBytes;
+			numCounts += featureBytes / 8;
+		}
+		if (from < lists.length)
+			batches.add(range(from, lists.length));
+		return batches;
+	}
+
+	/**
+	 * @param from
+	 * @param to
+	 * @return the integers from (inclusive) to (exclusive)
+	 */
+	private static int[] range(int from, int to) {
+		int[] range = new int[to - from];
+		for (int i = 0; i < range.length; i++) {
+			range[i] = from + i;
+		}
+		return range;
+	}
+
+	/**
+	 * Count the rows of a table in the initial buckets of several features
+	 * with a single pass over the table
+	 *
+	 * @param lists
+	 *            bucket lists with the grid of their initial buckets (see
+	 *            {@link BucketList#initGrid()})
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary of the bucket lists
+	 * @param sample
+	 *            the rows to count, null to count all rows
+	 * @param hashes
+	 *            receives every row read, null if no content hash is taken
+	 * @param numClasses
+	 *            number of classes the features were batched for
+	 * @param exec
+	 * @return the counts of the features, null if a row has a class ordinal
+	 *         of at least the given number of classes
+	 * @throws CanceledExecutionException
+	 */
+	static CountTensor fill(BucketList[] lists, BufferedDataTable inData, String classAttr,
+			ClassDictionary classes, RowSample sample, ContentHash hashes, int numClasses, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		CountTensor tensor = new CountTensor(lists, numClasses);
+		DataTableSpec inSpec = inData.getDataTableSpec();
+		int[] featureCols = new int[lists.length];
+		for (int f = 0; f < lists.length; f++) {
+			featureCols[f] = inSpec.findColumnIndex(lists[f].getFeature());
+		}
+		int classCol = inSpec.findColumnIndex(classAttr);
+
+		// the values are buffered for a block of rows, whose buckets are
+		// computed at once
+		RowBlock block = new RowBlock(featureCols);
+
+		// loop over instances
+		long rowCount = inData.size();
+		long row = 0;
+		try (CloseableRowIterator rows = BucketList.readColumns(inData, featureCols,
+				hashes == null ? new int[] { classCol } : hashes.withColumns(classCol))) {
+			while (rows.hasNext()) {
+				DataRow r = rows.next();
+				exec.checkCanceled();
+				exec.setProgress(row++ / (double) rowCount);
+				if (hashes != null)
+					hashes.add(r);
+
+				// get class value (ignore if missing or not sampled)
+				DataCell c = r.getCell(classCol);
+				if (sample != null && !sample.select(c.isMissing() ? -1 : classes.indexOf(c)))
+					continue;
+				if (c.isMissing())
+					continue;
+				int classIndex = classes.indexOf(c);
+				if (classIndex >= tensor.numClasses)
+					return null;
+				if (block.add(r, classIndex))
+					tensor.add(lists, block);
+			}
+		}
+		tensor.add(lists, block);
+		return tensor;
+	}
+
+	/**
+	 * Count the buffered values of a block of rows in the buckets of their
+	 * features (ignoring missing values) and clear the block
+	 *
+	 * @param lists
+	 * @param block
+	 */
+	private void add(BucketList[] lists, RowBlock block) {
+		for (int f = 0; f < lists.length; f++) {
+			int[] indices = block.bucketIndices(f, lists[f]);
+			for (int i = 0; i < block.size(); i++) {
+				if (!block.isMissing(f, i))
+					this.counts[(this.offsets[f] + indices[i]) * this.numClasses + block.getClassIndex(i)]++;
+			}
+		}
+		block.clear();
+	}
+
+	/**
+	 * Count the rows extracted into a column store in the initial buckets of
+	 * several features. The rows are selected once, then the features are
+	 * counted column by column from the primitive values.
+	 *
+	 * @param lists
+	 *            bucket lists with the grid of their initial buckets (see
+	 *            {@link BucketList#initGrid()})
+	 * @param store
+	 * @param columns
+	 *            position of each feature in the store
+	 * @param sample
+	 *            the rows to count, null to count all rows
+	 * @param numClasses
+	 *            number of classes the features were batched for
+	 * @param exec
+	 * @return the counts of the features, null if a row has a class ordinal
+	 *         of at least the given number of classes
+	 * @throws CanceledExecutionException
+	 */
+	static CountTensor fill(BucketList[] lists, ColumnStore store, int[] columns, RowSample sample,
+			int numClasses, ExecutionMonitor exec) throws CanceledExecutionException {
+		int numRows = store.getNumRows();
+		for (int row = 0; row < numRows; row++) {
+			if (store.getClassIndex(row) >= Math.max(numClasses, 1))
+				return null;
+		}
+		CountTensor tensor = new CountTensor(lists, numClasses);
+		BitSet selected = null;
+		if (sample != null) {
+			selected = new BitSet(numRows);
+			for (int row = 0; row < numRows; row++) {
+				if (sample.select(store.getClassIndex(row)))
+					selected.set(row);
+			}
+		}
+
+		// loop over features, then over batches of instances whose buckets
+		// are computed at once
+		long[] counts = tensor.counts;
+		double[] values = new double[BATCH_SIZE];
+		int[] indices = new int[BATCH_SIZE];
+		for (int f = 0; f < lists.length; f++) {
+			exec.checkCanceled();
+			exec.setProgress(f / (double) lists.length);
+			for (int from = 0; from < numRows; from += BATCH_SIZE) {
+				int length = Math.min(BATCH_SIZE, numRows - from);
+				store.get(columns[f], from, length, values);
+				lists[f].bucketIndices(values, length, indices);
+				for (int i = 0; i < length; i++) {
+
+					// ignore missing classes, rows not sampled and missing
+					// values
+					int row = from + i;
+					int classIndex = store.getClassIndex(row);
+					if (classIndex < 0 || (selected != null && !selected.get(row)) || ColumnStore.isMissing(values[i]))
+						continue;
+					counts[(tensor.offsets[f] + indices[i]) * tensor.numClasses + classIndex]++;
+				}
+			}
+		}
+		return tensor;
+	}
+
+	/**
+	 * @param feature
+	 *            position of the feature in the batch
+	 * @param bucket
+	 * @param classIndex
+	 * @return frequency of the class in the bucket of the feature
+	 */
+	long get(int feature, int bucket, int classIndex) {
+		if (classIndex >= this.numClasses)
+			return 0;
+		return this.counts[(this.offsets[feature] + bucket) * this.numClasses + classIndex];
+	}
+
+	/**
+	 * @return number of classes of the tensor
+	 */
+	int getNumClasses() {
+		return this.numClasses;
+	}
+}
@@ -0,0 +1,236 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges neighboring divisions until a maximal number of divisions is reached.
+ * In each step the pair of neighboring divisions whose merge results in the
+ * highest probability of the dominant class is merged (the first such pair if
+ * several pairs are equally good). Afterwards, the merged division is also
+ * merged with its next and previous division if they have the same dominant
+ * class.
+ * 
+ * The divisions are kept in a linked list and the candidate merges in a
+ * priority queue. After a merge, only the candidates involving the changed
+ * division are scored again, candidates referring to changed or removed
+ * divisions are discarded when they are polled.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+class DivisionMerger {
+
+	// divisions in their original order, and their neighbors in the list
+	private final Bucket[] divisions;
+	private final int[] prev;
+	private final int[] next;
+
+	// incremented whenever a division changes or is removed
+	private final int[] version;
+	private final boolean[] removed;
+
+	// number of divisions in the list
+	private int size;
+
+	// divisions in the order in which they were merged into their previous
+	// division
+	private final int[] removedOrder;
+	private int removedCount;
+
+	// sum of the frequencies of the most frequent class over all divisions
+	private long correct;
+
+	// candidate merges, best first
+	private final PriorityQueue<Candidate> candidates;
+
+	/**
+	 * A possible merge of a division with its next division
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+
+		private final int left;
+		private final int right;
+		private final int leftVersion;
+		private final int rightVersion;
+		private final double prob;
+
+		Candidate(int left, int right, int leftVersion, int rightVersion, double prob) {
+			this.left = left;
+			this.right = right;
+			this.leftVersion = leftVersion;
+			this.rightVersion = rightVersion;
+			this.prob = prob;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+
+			// highest probability first, ties are resolved by position
+			int cmp = Double.compare(other.prob, this.prob);
+			return cmp != 0 ? cmp : Integer.compare(this.left, other.left);
+		}
+	}
+
+	/**
+	 * @param divisions
+	 *            the divisions in their order
+	 */
+	DivisionMerger(List<Bucket> divisions) {
+		int n = divisions.size();
+		this.divisions = divisions.toArray(new Bucket[n]);
+		this.prev = new int[n];
+		this.next = new int[n];
+		this.version = new int[n];
+		this.removed = new boolean[n];
+		this.size = n;
+		this.removedOrder = new int[n];
+		this.candidates = new PriorityQueue<>(Math.max(1, n));
+		for (int i = 0; i < n; i++) {
+			this.prev[i] = i - 1;
+			this.next[i] = i + 1 < n ? i + 1 : -1;
+		}
+		for (int i = 0; i + 1 < n; i++) {
+			this.score(i);
+		}
+		for (Bucket division : this.divisions) {
+			this.correct += division.getMaxClassFreq();
+		}
+	}
+
+	/**
+	 * Merge divisions until their number is smaller or equal than the given
+	 * number
+	 * 
+	 * @param maxDivisions
+	 */
+	void mergeUntil(int maxDivisions) {
+		while (this.size > maxDivisions && this.size > 1) {
+			this.mergeBest();
+		}
+	}
+
+	/**
+	 * Perform a single merge step
+	 */
+	void mergeBest() {
+
+		// search for the merge of two divisions for which the probability of
+		// the dominant class is maximal
+		Candidate best = this.candidates.poll();
+		while (!this.isValid(best)) {
+			best = this.candidates.poll();
+		}
+
+		// merge both divisions and remove one from the list
+		int current = best.left;
+		this.merge(current, best.right);
+
+		// check if dominant class for merged division is the same as for the
+		// next division, if yes --> merge
+		int next = this.next[current];
+		if (next >= 0 && this.divisions[next].getDominantClassIndex() == this.divisions[current]
+				.getDominantClassIndex()) {
+			this.merge(current, next);
+		}
+
+		// check for previous division
+		int prev = this.prev[current];
+		if (prev >= 0 && this.divisions[prev].getDominantClassIndex() == this.divisions[current]
+				.getDominantClassIndex()) {
+			this.merge(prev, current);
+			current = prev;
+		}
+
+		// score the merges involving the changed division
+		if (this.prev[current] >= 0)
+			this.score(this.prev[current]);
+		if (this.next[current] >= 0)
+			this.score(current);
+	}
+
+	/**
+	 * @return the remaining divisions in their order
+	 */
+	ArrayList<Bucket> getDivisions() {
+		ArrayList<Bucket> result = new ArrayList<>(this.size);
+		for (int i = 0; i < this.divisions.length; i++) {
+			if (!this.removed[i])
+				result.add(this.divisions[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of remaining divisions
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the positions of the merged divisions, in the order in which
+	 *         they were merged into their previous division
+	 */
+	int[] getRemovedOrder() {
+		return this.removedOrder;
+	}
+
+	/**
+	 * @return the number of divisions merged so far
+	 */
+	int getRemovedCount() {
+		return this.removedCount;
+	}
+
+	/**
+	 * @return the number of instances belonging to the most frequent class of
+	 *         their division
+	 */
+	long getCorrect() {
+		return this.correct;
+	}
+
+	/**
+	 * Merge a division into its previous division and unlink it
+	 * 
+	 * @param left
+	 * @param right
+	 */
+	private void merge(int left, int right) {
+		this.correct -= this.divisions[left].getMaxClassFreq() + this.divisions[right].getMaxClassFreq();
+		this.divisions[left].merge(this.divisions[right]);
+		this.correct += this.divisions[left].getMaxClassFreq();
+		this.removedOrder[this.removedCount++] = right;
+		this.version[left]++;
+		this.version[right]++;
+		this.removed[right] = true;
+		this.next[left] = this.next[right];
+		if (this.next[right] >= 0)
+			this.prev[this.next[right]] = left;
+		this.size--;
+	}
+
+	/**
+	 * Add the merge of a division with its next division to the candidates
+	 * 
+	 * @param left
+	 */
+	private void score(int left) {
+		int right = this.next[left];
+		double prob = Bucket.determineDominantClassProb(this.divisions[left], this.divisions[right]);
+		this.candidates.add(new Candidate(left, right, this.version[left], this.version[right], prob));
+	}
+
+	/**
+	 * @param candidate
+	 * @return true if none of the divisions of the candidate changed since it
+	 *         was scored
+	 */
+	private boolean isValid(Candidate candidate) {
+		return !this.removed[candidate.left] && !this.removed[candidate.right]
+				&& this.version[candidate.left] == candidate.leftVersion
+				&& this.version[candidate.right] == candidate.rightVersion;
+	}
+}
@@ -0,0 +1,181 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataColumnDomain;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+
+/**
+ * Cache of fitted models, so that features whose data and settings did not
+ * change since a previous execution are not fitted again.
+ *
+ * A model is stored under a key of its feature: the specification of the
+ * feature and class column (name, type and domain) and the fit settings.
+ * Along with the model, the cache keeps the content hash of the feature and
+ * class column (see {@link ContentHash}) the model was fitted on. The hash is
+ * taken during the pass over the table that fills the other features, so a
+ * cached model is only reused if the values of its feature and the class
+ * values are unchanged, whichever table they come from. Executing again
+ * after changing the feature selection, the settings of other features or
+ * other columns of the input (e.g. after an upstream node was executed
+ * again) reuses the models of the unchanged features. The least recently
+ * used models are evicted when the estimated size of the cache exceeds its
+ * bound.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class FitCache {
+
+	// default bound of the estimated cache size in MB
+	static final int DEFAULT_MAX_MB = 64;
+
+	private long maxBytes;
+	private long bytes;
+
+	// cached models, least recently used first
+	private final LinkedHashMap<String, CachedModel> entries;
+
+	/**
+	 * A cached model and the content hash of the data it was fitted on
+	 */
+	private static final class CachedModel {
+
+		private final long hash;
+		private final FrozenBucketList model;
+
+		CachedModel(long hash, FrozenBucketList model) {
+			this.hash = hash;
+			this.model = model;
+		}
+	}
+
+	/**
+	 * @param maxBytes
+	 *            bound of the estimated cache size in bytes
+	 */
+	public FitCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Compute the key of each feature of the input table
+	 *
+	 * @param inSpec
+	 * @param features
+	 * @param classAttr
+	 * @param settings
+	 *            description of the fit settings
+	 * @return the key of each feature
+	 */
+	public static String[] keys(DataTableSpec inSpec, String[] features, String classAttr, String settings) {
+		String classSpec = describe(inSpec.getColumnSpec(classAttr));
+		String[] keys = new String[features.length];
+		for (int f = 0; f < features.length; f++) {
+			keys[f] = describe(inSpec.getColumnSpec(features[f])) + "|" + classSpec + "|" + settings;
+		}
+		return keys;
+	}
+
+	/**
+	 * @param key
+	 * @return true if a model is cached for the key, whatever data it was
+	 *         fitted on
+	 */
+	public synchronized boolean containsKey(String key) {
+		return this.entries.containsKey(key);
+	}
+
+	/**
+	 * @param key
+	 * @param hash
+	 *            content hash of the feature and class column
+	 * @return the cached model, null if there is none or it was fitted on
+	 *         other data
+	 */
+	public synchronized FrozenBucketList get(String key, long hash) {
+		CachedModel entry = this.entries.get(key);
+		return entry != null && entry.hash == hash ? entry.model : null;
+	}
+
+	/**
+	 * Add a model to the cache and evict the least recently used models if the
+	 * cache exceeds its bound
+	 *
+	 * @param key
+	 * @param hash
+	 *            content hash of the feature and class column the model was
+	 *            fitted on
+	 * @param model
+	 */
+	public synchronized void put(String key, long hash, FrozenBucketList model) {
+		CachedModel old = this.entries.put(key, new CachedModel(hash, model));
+		if (old != null)
+			this.bytes -= old.model.estimateSize();
+		this.bytes += model.estimateSize();
+		this.evict();
+	}
+
+	/**
+	 * Change the bound of the cache, evicting the least recently used models
+	 * if the cache exceeds it
+	 *
+	 * @param maxBytes
+	 *            bound of the estimated cache size in bytes, 0 to disable the
+	 *            cache
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.evict();
+	}
+
+	/**
+	 * Remove the least recently used models while the cache exceeds its bound
+	 */
+	private void evict() {
+		Iterator<CachedModel> it = this.entries.values().iterator();
+		while (this.bytes > this.maxBytes && it.hasNext()) {
+			this.bytes -= it.next().model.estimateSize();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove all models except those stored under the given keys
+	 *
+	 * @param keys
+	 */
+	public synchronized void retain(Collection<String> keys) {
+		Iterator<Map.Entry<String, CachedModel>> it = this.entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, CachedModel> entry = it.next();
+			if (!keys.contains(entry.getKey())) {
+				this.bytes -= entry.getValue().model.estimateSize();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all models
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		this.bytes = 0;
+	}
+
+	/**
+	 * @param spec
+	 * @return description of the name, type and domain of a column
+	 */
+	private static String describe(DataColumnSpec spec) {
+		DataColumnDomain domain = spec.getDomain();
+		return spec.getName() + ":" + spec.getType() + ":" + domain.getLowerBound() + ":" + domain.getUpperBound()
+				+ ":" + domain.getValues();
+	}
+}
@@ -0,0 +1,337 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+
+import com.google.common.collect.Range;
+
+/**
+ * Compact, immutable form of a fitted {@link BucketList} used to map feature
+ * values to their categories. The buckets of a fitted list are contiguous and
+ * closed at their upper end, so the category of a value is found by a binary
+ * search over the sorted upper bounds of the buckets. For integer features
+ * with a small range, the categories are additionally looked up directly in a
+ * table indexed by value. The output cells of all categories are created once,
+ * both as interval labels and as integer codes.
+ * 
+ * In contrast to the bucket list, the frozen model holds no reference to the
+ * input table.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class FrozenBucketList {
+
+	// largest range of an integer feature for which a lookup table is used
+	static final int MAX_LOOKUP_RANGE = 1 << 16;
+
+	private final String feature;
+
+	// upper bound of each bucket (positive infinity if unbounded)
+	private final double[] upperBounds;
+
+	// dominant class of each bucket
+	private final DataCell[] dominantClasses;
+
+	// class ordinals and frequencies of each bucket, null if not known
+	private final ClassDictionary classes;
+	private final int[][] countClasses;
+	private final long[][] classCounts;
+
+	// output cell of each category
+	private final DataCell[] cells;
+
+	// integer code of each category
+	private final DataCell[] codes;
+
+	// category of each integer value in [lookupOffset, lookupOffset +
+	// lookup.length), null if no lookup table is used
+	private final int[] lookup;
+	private final int lookupOffset;
+
+	/**
+	 * @param feature
+	 * @param upperBounds
+	 *            sorted upper bound of each bucket
+	 * @param dominantClasses
+	 *            dominant class of each bucket
+	 * @param lowerInt
+	 *            smallest value of an integer feature
+	 * @param upperInt
+	 *            largest value of an integer feature, smaller than lowerInt if
+	 *            the feature is not an integer feature
+	 */
+	public FrozenBucketList(String feature, double[] upperBounds, DataCell[] dominantClasses, int lowerInt,
+			int upperInt) {
+		this(feature, upperBounds, dominantClasses, null, null, null, lowerInt, upperInt);
+	}
+
+	/**
+	 * @param feature
+	 * @param upperBounds
+	 *            sorted upper bound of each bucket
+	 * @param dominantClasses
+	 *            dominant class of each bucket
+	 * @param classes
+	 *            dictionary of the class values
+	 * @param countClasses
+	 *            ordinals of the classes occurring in each bucket
+	 * @param classCounts
+	 *            frequencies of these classes
+	 * @param lowerInt
+	 *            smallest value of an integer feature
+	 * @param upperInt
+	 *            largest value of an integer feature, smaller than lowerInt if
+	 *            the feature is not an integer feature
+	 */
+	public FrozenBucketList(String feature, double[] upperBounds, DataCell[] dominantClasses,
+			ClassDictionary classes, int[][] countClasses, long[][] classCounts, int lowerInt, int upperInt) {
+		this.feature = feature;
+		this.upperBounds = upperBounds;
+		this.dominantClasses = dominantClasses;
+		this.classes = classes;
+		this.countClasses = countClasses;
+		this.classCounts = classCounts;
+
+		// create the output cells
+		this.cells = new DataCell[upperBounds.length];
+		for (int i = 0; i < this.cells.length; i++) {
+			this.cells[i] = new StringCell("Interval_" + i);
+		}
+		this.codes = new DataCell[upperBounds.length];
+		for (int i = 0; i < this.codes.length; i++) {
+			this.codes[i] = new IntCell(i);
+		}
+
+		// create the lookup table for integer features with a small range
+		if (lowerInt <= upperInt && (long) upperInt - lowerInt < MAX_LOOKUP_RANGE) {
+			this.lookupOffset = lowerInt;
+			this.lookup = new int[upperInt - lowerInt + 1];
+			for (int i = 0; i < this.lookup.length; i++) {
+				this.lookup[i] = this.search(lowerInt + i);
+			}
+		} else {
+			this.lookupOffset = 0;
+			this.lookup = null;
+		}
+	}
+
+	/**
+	 * Freeze the buckets of a fitted bucket list
+	 * 
+	 * @param feature
+	 * @param buckets
+	 *            contiguous buckets in ascending order
+	 * @param lowerInt
+	 * @param upperInt
+	 * @return the frozen model
+	 * @see #FrozenBucketList(String, double[], DataCell[], ClassDictionary,
+	 *      int[][], long[][], int, int)
+	 */
+	public static FrozenBucketList freeze(String feature, List<Bucket> buckets, int lowerInt, int upperInt) {
+		int n = buckets.size();
+		double[] upperBounds = new double[n];
+		DataCell[] dominantClasses = new DataCell[n];
+		int[][] countClasses = new int[n][];
+		long[][] classCounts = new long[n][];
+		ClassDictionary classes = null;
+		for (int i = 0; i < n; i++) {
+			Bucket bucket = buckets.get(i);
+			Range<Double> range = bucket.getRange();
+			upperBounds[i] = range.hasUpperBound() ? range.upperEndpoint() : Double.POSITIVE_INFINITY;
+			dominantClasses[i] = bucket.getDominantClass();
+			classes = bucket.getClassDictionary();
+
+			// keep the non-zero class frequencies
+			ClassFrequencies freqs = bucket.getClassFreqTable();
+			int nonZero = 0;
+			for (int slot = 0; slot < freqs.slots(); slot++) {
+				if (freqs.classAt(slot) >= 0)
+					nonZero++;
+			}
+			countClasses[i] = new int[nonZero];
+			classCounts[i] = new long[nonZero];
+			for (int slot = 0, j = 0; slot < freqs.slots(); slot++) {
+				if (freqs.classAt(slot) >= 0) {
+					countClasses[i][j] = freqs.classAt(slot);
+					classCounts[i][j++] = freqs.countAt(slot);
+				}
+			}
+		}
+		return new FrozenBucketList(feature, upperBounds, dominantClasses, classes, countClasses, classCounts,
+				lowerInt, upperInt);
+	}
+
+	/**
+	 * @param value
+	 * @return the position of the bucket that contains the value, -1 if no
+	 *         bucket contains the value
+	 */
+	public int getCategory(double value) {
+		if (this.lookup != null) {
+			int i = (int) value;
+			if (i == value && i >= this.lookupOffset && i - this.lookupOffset < this.lookup.length)
+				return this.lookup[i - this.lookupOffset];
+		}
+		return this.search(value);
+	}
+
+	/**
+	 * @param value
+	 * @return the output cell for the category of the value, a missing cell
+	 *         if no bucket contains the value
+	 */
+	public DataCell getCell(double value) {
+		return this.cellOf(this.getCategory(value));
+	}
+
+	/**
+	 * @param category
+	 *            position of a bucket, -1 for values not in any bucket
+	 * @return the output cell for the category, a missing cell for -1
+	 */
+	public DataCell cellOf(int category) {
+		return category < 0 ? DataType.getMissingCell() : this.cells[category];
+	}
+
+	/**
+	 * @param value
+	 * @return the integer code for the category of the value, a missing cell
+	 *         if no bucket contains the value
+	 */
+	public DataCell getCode(double value) {
+		return this.codeOf(this.getCategory(value));
+	}
+
+	/**
+	 * @param category
+	 *            position of a bucket, -1 for values not in any bucket
+	 * @return the integer code for the category, a missing cell for -1
+	 */
+	public DataCell codeOf(int category) {
+		return category < 0 ? DataType.getMissingCell() : this.codes[category];
+	}
+
+	/**
+	 * @param category
+	 *            position of a bucket
+	 * @return the range of the bucket, e.g. "(0.5, 2.0]" or "(2.0, Infinity)"
+	 */
+	public String getInterval(int category) {
+		double lower = category == 0 ? Double.NEGATIVE_INFINITY : this.upperBounds[category - 1];
+		double upper = this.upperBounds[category];
+		return "(" + lower + ", " + upper + (upper == Double.POSITIVE_INFINITY ? ")" : "]");
+	}
+
+	/**
+	 * @param value
+	 * @return the first bucket whose upper bound is greater or equal than the
+	 *         value, -1 if there is none. As for the ranges of the buckets, NaN
+	 *         is treated as larger than all other values.
+	 */
+	private int search(double value) {
+		int n = this.upperBounds.length;
+		if (Double.isNaN(value))
+			return n > 0 && this.upperBounds[n - 1] == Double.POSITIVE_INFINITY ? n - 1 : -1;
+		int i = Arrays.binarySearch(this.upperBounds, value);
+		if (i >= 0) {
+
+			// go to the first of several equal bounds
+			while (i > 0 && Double.compare(this.upperBounds[i - 1], value) == 0) {
+				i--;
+			}
+			return i;
+		}
+		i = -i - 1;
+		return i < n ? i : -1;
+	}
+
+	/**
+	 * @return the name of the feature
+	 */
+	public String getFeature() {
+		return this.feature;
+	}
+
+	/**
+	 * @return the number of buckets
+	 */
+	public int size() {
+		return this.upperBounds.length;
+	}
+
+	/**
+	 * @return the upper bound of each bucket
+	 */
+	public double[] getUpperBounds() {
+		return this.upperBounds.clone();
+	}
+
+	/**
+	 * @return the smallest value of the lookup table of an integer feature
+	 */
+	public int getLowerInt() {
+		return this.lookup != null ? this.lookupOffset : 1;
+	}
+
+	/**
+	 * @return the largest value of the lookup table of an integer feature,
+	 *         smaller than {@link #getLowerInt()} if no lookup table is used
+	 */
+	public int getUpperInt() {
+		return this.lookup != null ? this.lookupOffset + this.lookup.length - 1 : 0;
+	}
+
+	/**
+	 * @return the dictionary of the class values, null if the class
+	 *         frequencies are not known
+	 */
+	public ClassDictionary getClassDictionary() {
+		return this.classes;
+	}
+
+	/**
+	 * @param bucket
+	 * @return the ordinals of the classes occurring in the bucket, null if not
+	 *         known
+	 */
+	public int[] getCountClasses(int bucket) {
+		return this.countClasses == null ? null : this.countClasses[bucket].clone();
+	}
+
+	/**
+	 * @param bucket
+	 * @return the frequencies of the classes occurring in the bucket (see
+	 *         {@link #getCountClasses(int)}), null if not known
+	 */
+	public long[] getClassCounts(int bucket) {
+		return this.classCounts == null ? null : this.classCounts[bucket].clone();
+	}
+
+	/**
+	 * @return the estimated memory size of the model in bytes
+	 */
+	public long estimateSize() {
+		long size = 128 + 8L * this.upperBounds.length + 80L * this.cells.length;
+		if (this.lookup != null)
+			size += 4L * this.lookup.length;
+		if (this.countClasses != null) {
+			for (int[] c : this.countClasses) {
+				size += 32 + 12L * c.length;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the dominant class of each bucket
+	 */
+	public DataCell[] getDominantClasses() {
+		return this.dominantClasses.clone();
+	}
+}
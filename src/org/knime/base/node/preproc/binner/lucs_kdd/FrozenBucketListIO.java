@@ -0,0 +1,199 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContent;
+import org.knime.core.node.ModelContentRO;
+
+/**
+ * Saves and loads fitted models (see {@link FrozenBucketList}) to and from a
+ * directory. The class values are stored once in an XML file, the bucket
+ * bounds, dominant classes and class frequencies of all features in a compact
+ * binary file referring to the class values by ordinal. Along with each model,
+ * the binary file keeps its key and content hash in the {@link FitCache}, so
+ * that the cache can be seeded with the loaded models.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class FrozenBucketListIO {
+
+	private static final String CLASSES_FILE = "classes.xml";
+	private static final String MODELS_FILE = "models.bin";
+	private static final String CFG_CLASSES = "classes";
+	private static final String CFG_VALUES = "values";
+	private static final int VERSION = 2;
+
+	private FrozenBucketListIO() {
+	}
+
+	/**
+	 * Models loaded from a directory with their cache keys and content hashes
+	 */
+	static final class Saved {
+
+		/** the fitted model of each feature */
+		final FrozenBucketList[] models;
+
+		/** the cache key of each model */
+		final String[] keys;
+
+		/** the content hash of the data each model was fitted on */
+		final long[] hashes;
+
+		Saved(FrozenBucketList[] models, String[] keys, long[] hashes) {
+			this.models = models;
+			this.keys = keys;
+			this.hashes = hashes;
+		}
+	}
+
+	/**
+	 * @param dir
+	 * @return true if the directory contains saved models
+	 */
+	static boolean exists(File dir) {
+		return new File(dir, MODELS_FILE).exists();
+	}
+
+	/**
+	 * Save the models to the directory
+	 * 
+	 * @param dir
+	 * @param models
+	 * @param keys
+	 *            the cache key of each model
+	 * @param hashes
+	 *            the content hash of the data each model was fitted on
+	 * @throws IOException
+	 */
+	static void save(File dir, FrozenBucketList[] models, String[] keys, long[] hashes) throws IOException {
+		ClassDictionary classes = new ClassDictionary();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(new File(dir, MODELS_FILE))))) {
+			out.writeInt(VERSION);
+			out.writeInt(models.length);
+			for (int f = 0; f < models.length; f++) {
+				FrozenBucketList model = models[f];
+				out.writeUTF(model.getFeature());
+
+				// the key contains the domain of the columns, which may exceed
+				// the length of a modified UTF-8 string
+				byte[] key = keys[f].getBytes(StandardCharsets.UTF_8);
+				out.writeInt(key.length);
+				out.write(key);
+				out.writeLong(hashes[f]);
+				out.writeInt(model.getLowerInt());
+				out.writeInt(model.getUpperInt());
+				double[] upperBounds = model.getUpperBounds();
+				DataCell[] dominantClasses = model.getDominantClasses();
+				ClassDictionary modelClasses = model.getClassDictionary();
+				out.writeInt(upperBounds.length);
+				for (int i = 0; i < upperBounds.length; i++) {
+					out.writeDouble(upperBounds[i]);
+					out.writeInt(dominantClasses[i] == null ? -1 : classes.indexOf(dominantClasses[i]));
+
+					// class frequencies (-1 if not known)
+					int[] countClasses = model.getCountClasses(i);
+					long[] classCounts = model.getClassCounts(i);
+					if (countClasses == null) {
+						out.writeInt(-1);
+						continue;
+					}
+					out.writeInt(countClasses.length);
+					for (int j = 0; j < countClasses.length; j++) {
+						out.writeInt(classes.indexOf(modelClasses.get(countClasses[j])));
+						out.writeLong(classCounts[j]);
+					}
+				}
+			}
+		}
+
+		// save the class values
+		DataCell[] values = new DataCell[classes.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = classes.get(i);
+		}
+		ModelContent content = new ModelContent(CFG_CLASSES);
+		content.addDataCellArray(CFG_VALUES, values);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, CLASSES_FILE)))) {
+			content.saveToXML(out);
+		}
+	}
+
+	/**
+	 * Load the models from the directory
+	 * 
+	 * @param dir
+	 * @return the models with their cache keys and content hashes
+	 * @throws IOException
+	 */
+	static Saved load(File dir) throws IOException {
+
+		// load the class values
+		ClassDictionary classes = new ClassDictionary();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(new File(dir, CLASSES_FILE)))) {
+			ModelContentRO content = ModelContent.loadFromXML(in);
+			for (DataCell value : content.getDataCellArray(CFG_VALUES)) {
+				classes.indexOf(value);
+			}
+		} catch (InvalidSettingsException e) {
+			throw new IOException("Invalid class values: " + e.getMessage(), e);
+		}
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(new File(dir, MODELS_FILE))))) {
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported model version: " + version);
+			FrozenBucketList[] models = new FrozenBucketList[in.readInt()];
+			String[] keys = new String[models.length];
+			long[] hashes = new long[models.length];
+			for (int f = 0; f < models.length; f++) {
+				String feature = in.readUTF();
+				byte[] key = new byte[in.readInt()];
+				in.readFully(key);
+				keys[f] = new String(key, StandardCharsets.UTF_8);
+				hashes[f] = in.readLong();
+				int lowerInt = in.readInt();
+				int upperInt = in.readInt();
+				int n = in.readInt();
+				double[] upperBounds = new double[n];
+				DataCell[] dominantClasses = new DataCell[n];
+				int[][] countClasses = new int[n][];
+				long[][] classCounts = new long[n][];
+				boolean known = true;
+				for (int i = 0; i < n; i++) {
+					upperBounds[i] = in.readDouble();
+					int dominantClass = in.readInt();
+					dominantClasses[i] = dominantClass < 0 ? null : classes.get(dominantClass);
+					int nonZero = in.readInt();
+					known &= nonZero >= 0;
+					countClasses[i] = new int[Math.max(0, nonZero)];
+					classCounts[i] = new long[Math.max(0, nonZero)];
+					for (int j = 0; j < nonZero; j++) {
+						countClasses[i][j] = in.readInt();
+						classCounts[i][j] = in.readLong();
+					}
+				}
+				models[f] = known
+						? new FrozenBucketList(feature, upperBounds, dominantClasses, classes, countClasses,
+								classCounts, lowerInt, upperInt)
+						: new FrozenBucketList(feature, upperBounds, dominantClasses, lowerInt, upperInt);
+			}
+			return new Saved(models, keys, hashes);
+		}
+	}
+}
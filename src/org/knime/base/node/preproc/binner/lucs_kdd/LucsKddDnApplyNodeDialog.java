@@ -0,0 +1,31 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import javax.swing.JFileChooser;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentFileChooser;
+
+
+/**
+ * <code>NodeDialog</code> for the "LUCS-KDD DN Apply" Node.
+ * Optionally writes the binned rows as a transaction file.
+ * 
+ * @author Tobias Witt
+ */
+public class LucsKddDnApplyNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * New pane for configuring the LUCS-KDD DN Apply node.
+     */
+    protected LucsKddDnApplyNodeDialog() {
+        super();
+        
+        // write the binned rows to a transaction file
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnApplyNodeModel.createWriteTransactionsModel(), "Write transaction file"));
+    	addDialogComponent(new DialogComponentFileChooser(
+    			LucsKddDnApplyNodeModel.createTransactionFileModel(), "lucs-kdd-transactions",
+    			JFileChooser.SAVE_DIALOG, ".num", ".txt"));
+    }
+}
@@ -0,0 +1,42 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LUCS-KDD DN Apply" Node.
+ * Applies a fitted LUCS-KDD DN (Discretisation/ Normalisation) model
+ *
+ * @author Tobias Witt
+ */
+public class LucsKddDnApplyNodeFactory 
+        extends NodeFactory<LucsKddDnApplyNodeModel> {
+
+    @Override
+    public LucsKddDnApplyNodeModel createNodeModel() {
+        return new LucsKddDnApplyNodeModel();
+    }
+
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    @Override
+    public NodeView<LucsKddDnApplyNodeModel> createNodeView(final int viewIndex,
+            final LucsKddDnApplyNodeModel nodeModel) {
+        return null;
+    }
+
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new LucsKddDnApplyNodeDialog();
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.StreamableOperator;
+
+/**
+ * This is the model implementation of the LUCS-KDD DN Apply node. It bins the
+ * features of a table using a model fitted by the LUCS-KDD DN node, and
+ * optionally writes the binned rows as a transaction file for classification
+ * association rule miners in the same pass.
+ *
+ * @author Tobias Witt, University of Konstanz
+ */
+public class LucsKddDnApplyNodeModel extends NodeModel {
+
+	// write the binned rows to a transaction file
+	static final String CFG_WRITE_TRANSACTIONS = "Write transaction file";
+	private final SettingsModelBoolean m_writeTransactions = createWriteTransactionsModel();
+
+	protected static SettingsModelBoolean createWriteTransactionsModel() {
+		return new SettingsModelBoolean(CFG_WRITE_TRANSACTIONS, false);
+	}
+
+	// path of the transaction file
+	static final String CFG_TRANSACTION_FILE = "Transaction file";
+	private final SettingsModelString m_transactionFile = createTransactionFileModel();
+
+	protected static SettingsModelString createTransactionFileModel() {
+		return new SettingsModelString(CFG_TRANSACTION_FILE, "");
+	}
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected LucsKddDnApplyNodeModel() {
+		super(new PortType[] { LucsKddDnModelPortObject.TYPE, BufferedDataTable.TYPE },
+				new PortType[] { BufferedDataTable.TYPE });
+	}
+
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+		LucsKddDnModelPortObject model = (LucsKddDnModelPortObject) inData[0];
+		BufferedDataTable input = (BufferedDataTable) inData[1];
+		if (!m_writeTransactions.getBooleanValue()) {
+			ColumnRearranger outputTable = createColumnRearranger(input.getDataTableSpec(), model, null);
+			return new PortObject[] { exec.createColumnRearrangeTable(input, outputTable, exec) };
+		}
+
+		// bin the rows and write their items in the same pass
+		try (TransactionWriter writer = createWriter(input.getDataTableSpec(), model)) {
+			ColumnRearranger outputTable = createColumnRearranger(input.getDataTableSpec(), model, writer);
+			return new PortObject[] { exec.createColumnRearrangeTable(input, outputTable, exec) };
+		}
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		LucsKddDnModelPortObjectSpec modelSpec = (LucsKddDnModelPortObjectSpec) inSpecs[0];
+		DataTableSpec inputSpec = (DataTableSpec) inSpecs[1];
+		String[] features = modelSpec.getFeatures();
+		checkFeatures(inputSpec, features);
+		if (m_writeTransactions.getBooleanValue() && m_transactionFile.getStringValue().trim().isEmpty())
+			throw new InvalidSettingsException("Select the transaction file.");
+		return new PortObjectSpec[] {
+				LucsKddDnNodeModel.createColumnRearranger(inputSpec, features, null, modelSpec.isCodes(),
+						modelSpec.getDivisions()).createSpec() };
+	}
+
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+
+		// the rows of the transaction file are written by a single partition
+		return new InputPortRole[] { InputPortRole.NONDISTRIBUTED_NONSTREAMABLE,
+				m_writeTransactions.getBooleanValue() ? InputPortRole.NONDISTRIBUTED_STREAMABLE
+						: InputPortRole.DISTRIBUTED_STREAMABLE };
+	}
+
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+		return new OutputPortRole[] {
+				m_writeTransactions.getBooleanValue() ? OutputPortRole.NONDISTRIBUTED : OutputPortRole.DISTRIBUTED };
+	}
+
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+			final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		return new StreamableOperator() {
+
+			@Override
+			public void runFinal(final PortInput[] inputs,
+					final PortOutput[] outputs, final ExecutionContext exec)
+					throws Exception {
+				LucsKddDnModelPortObject model = (LucsKddDnModelPortObject) ((PortObjectInput) inputs[0])
+						.getPortObject();
+				DataTableSpec inSpec = (DataTableSpec) inSpecs[1];
+				if (!m_writeTransactions.getBooleanValue()) {
+					createColumnRearranger(inSpec, model, null).createStreamableFunction(1, 0)
+							.runFinal(inputs, outputs, exec);
+					return;
+				}
+				try (TransactionWriter writer = createWriter(inSpec, model)) {
+					createColumnRearranger(inSpec, model, writer).createStreamableFunction(1, 0)
+							.runFinal(inputs, outputs, exec);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param inSpec
+	 * @param model
+	 * @param writer
+	 *            writer of the transaction file, null if no transaction file is
+	 *            written
+	 * @return the column re-arranger replacing the features of the model by
+	 *         their binned columns
+	 * @throws InvalidSettingsException
+	 */
+	private static ColumnRearranger createColumnRearranger(DataTableSpec inSpec, LucsKddDnModelPortObject model,
+			TransactionWriter writer) throws InvalidSettingsException {
+		LucsKddDnModelPortObjectSpec modelSpec = model.getSpec();
+		String[] features = modelSpec.getFeatures();
+		checkFeatures(inSpec, features);
+		return LucsKddDnNodeModel.createColumnRearranger(inSpec, features, model.getModels(), modelSpec.isCodes(),
+				modelSpec.getDivisions(), writer, modelSpec.getClassAttr());
+	}
+
+	/**
+	 * @param inSpec
+	 * @param model
+	 * @return the writer of the transaction file, the class values are
+	 *         written if the table contains the class column of the model
+	 * @throws IOException
+	 */
+	private TransactionWriter createWriter(DataTableSpec inSpec, LucsKddDnModelPortObject model)
+			throws IOException {
+		Path file = Paths.get(m_transactionFile.getStringValue().trim());
+		String classAttr = model.getSpec().getClassAttr();
+		return new TransactionWriter(file, model.getModels(), classAttr, model.getClassDictionary());
+	}
+
+	/**
+	 * Check that the table contains all features of the model as numeric
+	 * columns
+	 * 
+	 * @param inSpec
+	 * @param features
+	 * @throws InvalidSettingsException
+	 */
+	static void checkFeatures(DataTableSpec inSpec, String[] features) throws InvalidSettingsException {
+		for (String feature : features) {
+			DataColumnSpec columnSpec = inSpec.getColumnSpec(feature);
+			if (columnSpec == null)
+				throw new InvalidSettingsException("Input table does not contain feature column: " + feature);
+			if (!columnSpec.getType().isCompatible(DoubleValue.class))
+				throw new InvalidSettingsException("Feature column is not numeric: " + feature);
+		}
+	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		m_writeTransactions.saveSettingsTo(settings);
+		m_transactionFile.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LucsKddDnNodeModel.validateOptional(m_writeTransactions, CFG_WRITE_TRANSACTIONS, settings);
+		LucsKddDnNodeModel.validateOptional(m_transactionFile, CFG_TRANSACTION_FILE, settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LucsKddDnNodeModel.loadOptional(m_writeTransactions, CFG_WRITE_TRANSACTIONS, settings);
+		LucsKddDnNodeModel.loadOptional(m_transactionFile, CFG_TRANSACTION_FILE, settings);
+	}
+
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void reset() {
+		// Nothing to do.
+	}
+}
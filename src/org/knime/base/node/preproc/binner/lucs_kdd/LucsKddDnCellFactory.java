@@ -1,52 +1,114 @@
 package org.knime.base.node.preproc.binner.lucs_kdd;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataRow;
-import org.knime.core.data.container.SingleCellFactory;
-import org.knime.core.data.def.StringCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.container.AbstractCellFactory;
 import org.knime.core.data.DoubleValue;
-import org.knime.core.data.MissingCell;
 
 /**
+ * Cell factory producing the binned columns of all features of a row in a
+ * single call. The factory is stateless, so rows are processed in parallel,
+ * unless the binned rows are also written to a transaction file, which needs
+ * the rows in their order.
+ * 
  * @author Tobias Witt, University of Konstanz
  *
  */
-public class LucsKddDnCellFactory extends SingleCellFactory {
+public class LucsKddDnCellFactory extends AbstractCellFactory {
+	
+	private FrozenBucketList[] buckets;
+	
+	// position of each feature
+	private int[] colIndices;
 	
-	private BucketList buckets;
+	// output integer codes instead of interval labels
+	private boolean codes;
+	
+	// writer of the transaction file and position of the class column (-1 if
+	// not contained), null if no transaction file is written
+	private TransactionWriter writer;
+	private int classIndex;
 	
 	/**
-	 * @param colSpec
-	 * @param buckets
+	 * @param colSpecs specification of the binned column of each feature
+	 * @param buckets fitted model of each feature
+	 * @param colIndices position of each feature in the input table
 	 */
-	public LucsKddDnCellFactory(DataColumnSpec colSpec, BucketList buckets) {
-		super(colSpec);
+	public LucsKddDnCellFactory(DataColumnSpec[] colSpecs, FrozenBucketList[] buckets, int[] colIndices) {
+		this(colSpecs, buckets, colIndices, false);
+	}
+	
+	/**
+	 * @param colSpecs specification of the binned column of each feature
+	 * @param buckets fitted model of each feature
+	 * @param colIndices position of each feature in the input table
+	 * @param codes true to output the integer codes of the categories
+	 */
+	public LucsKddDnCellFactory(DataColumnSpec[] colSpecs, FrozenBucketList[] buckets, int[] colIndices,
+			boolean codes) {
+		this(colSpecs, buckets, colIndices, codes, null, -1);
+	}
+	
+	/**
+	 * @param colSpecs specification of the binned column of each feature
+	 * @param buckets fitted model of each feature
+	 * @param colIndices position of each feature in the input table
+	 * @param codes true to output the integer codes of the categories
+	 * @param writer receives the items of each binned row, null if no
+	 *            transaction file is written
+	 * @param classIndex position of the class column in the input table, -1
+	 *            if the table has no class column
+	 */
+	public LucsKddDnCellFactory(DataColumnSpec[] colSpecs, FrozenBucketList[] buckets, int[] colIndices,
+			boolean codes, TransactionWriter writer, int classIndex) {
+		super(writer == null, colSpecs);
 		this.buckets = buckets;		
+		this.colIndices = colIndices;
+		this.codes = codes;
+		this.writer = writer;
+		this.classIndex = classIndex;
 	}
 	
 	@Override
-	public DataCell getCell(DataRow row) {	
-		
-		// position of feature
-		int colIndex = this.buckets.getColIndex(this.buckets.getFeature());		
+	public DataCell[] getCells(DataRow row) {	
 		
-		DataCell category;
-		
-		// get value of feature
-		DataCell val = row.getCell(colIndex);
-		
-		// check if value is missing
-		if(val.isMissing()){
-			category = new MissingCell(null);
+		DataCell[] categories = new DataCell[this.buckets.length];
+		int[] items = this.writer != null ? new int[categories.length] : null;
+		for(int i = 0; i < categories.length; i++){
+			
+			// get value of feature
+			DataCell val = row.getCell(this.colIndices[i]);
+			
+			// check if value is missing
+			if(val.isMissing()){
+				categories[i] = DataType.getMissingCell();
+				if(items != null)
+					items[i] = -1;
+			}
+			
+			else{					
+				// obtain category
+				double value = ((DoubleValue) val).getDoubleValue();	
+				int category = this.buckets[i].getCategory(value);
+				categories[i] = this.codes ? this.buckets[i].codeOf(category) : this.buckets[i].cellOf(category);
+				if(items != null)
+					items[i] = category;
+			}	
 		}
 		
-		else{					
-			// obtain category
-			double value = ((DoubleValue) row.getCell(colIndex)).getDoubleValue();	
-			category = new StringCell(this.buckets.getCategory(value));		
-		}	
-		return category;		
+		// write the items of the row to the transaction file
+		if(this.writer != null){
+			try {
+				this.writer.write(items, this.classIndex < 0 ? null : row.getCell(this.classIndex));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return categories;		
 	}
 }
-
@@ -0,0 +1,42 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LUCS-KDD Histogram Combine" Node.
+ * Combines two partial LUCS-KDD DN histogram states
+ *
+ * @author Tobias Witt
+ */
+public class LucsKddDnCombineNodeFactory 
+        extends NodeFactory<LucsKddDnCombineNodeModel> {
+
+    @Override
+    public LucsKddDnCombineNodeModel createNodeModel() {
+        return new LucsKddDnCombineNodeModel();
+    }
+
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    @Override
+    public NodeView<LucsKddDnCombineNodeModel> createNodeView(final int viewIndex,
+            final LucsKddDnCombineNodeModel nodeModel) {
+        return null;
+    }
+
+    @Override
+    public boolean hasDialog() {
+        return false;
+    }
+
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return null;
+    }
+
+}
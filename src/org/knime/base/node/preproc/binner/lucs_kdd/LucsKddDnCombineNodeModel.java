@@ -0,0 +1,80 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+/**
+ * This is the model implementation of the LUCS-KDD Histogram Combine node. It
+ * combines two partial histogram states, filled from different partitions of
+ * a table with the same grid, by adding their class frequencies.
+ *
+ * @author Tobias Witt, University of Konstanz
+ */
+public class LucsKddDnCombineNodeModel extends NodeModel {
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected LucsKddDnCombineNodeModel() {
+		super(new PortType[] { LucsKddDnHistogramPortObject.TYPE, LucsKddDnHistogramPortObject.TYPE },
+				new PortType[] { LucsKddDnHistogramPortObject.TYPE });
+	}
+
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+		LucsKddDnHistogramPortObject first = (LucsKddDnHistogramPortObject) inData[0];
+		LucsKddDnHistogramPortObject second = (LucsKddDnHistogramPortObject) inData[1];
+		return new PortObject[] { first.combine(second) };
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		LucsKddDnHistogramPortObjectSpec first = (LucsKddDnHistogramPortObjectSpec) inSpecs[0];
+		LucsKddDnHistogramPortObjectSpec second = (LucsKddDnHistogramPortObjectSpec) inSpecs[1];
+		LucsKddDnHistogramPortObject.checkCompatible(first, second);
+		return new PortObjectSpec[] { first };
+	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		// No settings.
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		// No settings.
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		// No settings.
+	}
+
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void reset() {
+		// Nothing to do.
+	}
+}
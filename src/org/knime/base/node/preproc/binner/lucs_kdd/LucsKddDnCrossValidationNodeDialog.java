@@ -0,0 +1,57 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.data.IntValue;
+import org.knime.core.data.NominalValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter2;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+
+
+/**
+ * <code>NodeDialog</code> for the "LUCS-KDD Cross-Validation" Node.
+ * 
+ * @author Tobias Witt
+ */
+public class LucsKddDnCrossValidationNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * New pane for configuring the LUCS-KDD Cross-Validation node.
+     */
+	@SuppressWarnings({ "unchecked"})
+    protected LucsKddDnCrossValidationNodeDialog() {
+        super();
+        
+        // class attribute
+    	addDialogComponent(new DialogComponentColumnNameSelection(
+    			LucsKddDnNodeModel.createClassColModel(), 
+    			"Class Column",
+    			0, true, NominalValue.class));
+    	
+    	// fold of each row
+    	addDialogComponent(new DialogComponentColumnNameSelection(
+    			LucsKddDnCrossValidationNodeModel.createFoldColModel(), 
+    			"Fold Column",
+    			0, true, NominalValue.class, IntValue.class));
+    	
+    	// desired number of divisions
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createNumDivisionsModel(), "Max. number of divisions:", 1));
+    	
+    	// select the number of divisions automatically
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnNodeModel.createAutoDivisionsModel(), "Select number of divisions automatically"));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createToleranceModel(), "Accuracy tolerance:", 0.01));
+    	
+    	// number of threads used to fit the features
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createNumThreadsModel(), "Number of threads:", 1));
+    	
+    	// choose features
+    	addDialogComponent(new DialogComponentColumnFilter2(
+    		LucsKddDnNodeModel.createIncludedFeaturesModel(), 0));                     
+    }
+}
+
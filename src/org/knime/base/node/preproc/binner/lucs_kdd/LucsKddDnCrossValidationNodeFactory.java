@@ -0,0 +1,43 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LUCS-KDD Cross-Validation" Node.
+ * Fits the LUCS-KDD DN model of every fold of a cross-validation in one pass
+ *
+ * @author Tobias Witt
+ */
+public class LucsKddDnCrossValidationNodeFactory 
+        extends NodeFactory<LucsKddDnCrossValidationNodeModel> {
+
+    @Override
+    public LucsKddDnCrossValidationNodeModel createNodeModel() {
+        return new LucsKddDnCrossValidationNodeModel();
+    }
+
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    @Override
+    public NodeView<LucsKddDnCrossValidationNodeModel> createNodeView(final int viewIndex,
+            final LucsKddDnCrossValidationNodeModel nodeModel) {
+        return null;
+    }
+
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new LucsKddDnCrossValidationNodeDialog();
+    }
+
+}
+
@@ -0,0 +1,299 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.NominalValue;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelColumnFilter2;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+/**
+ * This is the model implementation of the LUCS-KDD Cross-Validation node. It
+ * fits the model of every fold of a cross-validation from a single pass over
+ * the input table: the bucket counts of each fold are filled in one scan, and
+ * the counts of the training set of a fold are the total counts minus the
+ * counts of the fold. Only the dominant class determination and the merging
+ * of the buckets are run once per fold.
+ *
+ * @author Tobias Witt, University of Konstanz
+ */
+public class LucsKddDnCrossValidationNodeModel extends NodeModel {
+
+	// the logger instance
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(LucsKddDnCrossValidationNodeModel.class);
+
+	// class attribute
+	private final SettingsModelString m_class = LucsKddDnNodeModel.createClassColModel();
+
+	// fold of each row
+	private final SettingsModelString m_fold = createFoldColModel();
+
+	protected static SettingsModelString createFoldColModel() {
+		return new SettingsModelString("Fold Column", "");
+	}
+
+	// desired number of divisions
+	private final SettingsModelIntegerBounded m_divisions = LucsKddDnNodeModel.createNumDivisionsModel();
+
+	// select the number of divisions automatically
+	private final SettingsModelBoolean m_autoDivisions = LucsKddDnNodeModel.createAutoDivisionsModel();
+
+	// tolerated loss of accuracy for the automatic selection of divisions
+	private final SettingsModelDoubleBounded m_tolerance = LucsKddDnNodeModel.createToleranceModel();
+
+	// number of threads used to fit the features
+	private final SettingsModelIntegerBounded m_threads = LucsKddDnNodeModel.createNumThreadsModel();
+
+	// select variables
+	private final SettingsModelColumnFilter2 m_features = LucsKddDnNodeModel.createIncludedFeaturesModel();
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected LucsKddDnCrossValidationNodeModel() {
+		super(new PortType[] { BufferedDataTable.TYPE },
+				new PortType[] { BufferedDataTable.TYPE, BufferedDataTable.TYPE });
+	}
+
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+		BufferedDataTable input = (BufferedDataTable) inData[0];
+		DataTableSpec inSpec = input.getDataTableSpec();
+		String classAttr = m_class.getStringValue();
+		String[] features = getFeatures(inSpec);
+
+		// fill the buckets of each fold with a single pass
+		ClassDictionary classes = ClassDictionary.fromDomain(inSpec.getColumnSpec(classAttr));
+		ClassDictionary folds = new ClassDictionary();
+		List<BucketList[]> foldLists = BucketList.fillGroups(features, input, classAttr, m_fold.getStringValue(),
+				classes, folds, exec.createSubProgress(0.4));
+		LOGGER.debug("Fitting " + foldLists.size() + " folds of " + features.length + " features");
+
+		// total counts of all folds
+		BucketList[] total = new BucketList[features.length];
+		for (int f = 0; f < features.length; f++) {
+			for (BucketList[] lists : foldLists) {
+				if (total[f] == null)
+					total[f] = lists[f].copy();
+				else
+					total[f].addCounts(lists[f], null, 1);
+			}
+		}
+
+		// fit the model of each fold on the total counts minus the counts of
+		// the fold
+		// the folds share the threads of one pool
+		double tolerance = m_autoDivisions.getBooleanValue() ? m_tolerance.getDoubleValue() : -1;
+		ExecutionMonitor fitExec = exec.createSubProgress(0.2);
+		FrozenBucketList[][] models = new FrozenBucketList[foldLists.size()][features.length];
+		ForkJoinPool pool = LucsKddDnNodeModel.createPool(Math.min(m_threads.getIntValue(), features.length));
+		try {
+			for (int k = 0; k < foldLists.size(); k++) {
+				fitExec.setProgress(k / (double) foldLists.size(), "Fitting fold " + folds.get(k));
+				BucketList[] training = new BucketList[features.length];
+				for (int f = 0; f < features.length; f++) {
+					training[f] = total[f].copy();
+					training[f].addCounts(foldLists.get(k)[f], null, -1);
+				}
+				LucsKddDnNodeModel.fit(training, m_divisions.getIntValue(), tolerance, pool,
+						fitExec.createSubProgress(1.0 / foldLists.size()));
+				for (int f = 0; f < features.length; f++) {
+					models[k][f] = training[f].freeze();
+				}
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+		}
+
+		// bin each row with the model of its fold
+		BufferedDataTable binned = exec.createColumnRearrangeTable(input,
+				createColumnRearranger(inSpec, features, models, folds), exec.createSubProgress(0.3));
+
+		// describe the divisions of each fold
+		BufferedDataContainer container = exec.createDataContainer(createDivisionsSpec(inSpec));
+		long row = 0;
+		for (int k = 0; k < models.length; k++) {
+			for (FrozenBucketList model : models[k]) {
+				double[] upperBounds = model.getUpperBounds();
+				DataCell[] dominantClasses = model.getDominantClasses();
+				for (int i = 0; i < upperBounds.length; i++) {
+					container.addRowToTable(new DefaultRow(RowKey.createRowKey(row++), folds.get(k),
+							new StringCell(model.getFeature()), model.cellOf(i),
+							new DoubleCell(upperBounds[i]),
+							dominantClasses[i] == null ? DataType.getMissingCell() : dominantClasses[i]));
+				}
+			}
+		}
+		container.close();
+
+		return new PortObject[] { binned, container.getTable() };
+	}
+
+	/**
+	 * @param inSpec
+	 * @return the selected features, without the fold column
+	 */
+	private String[] getFeatures(DataTableSpec inSpec) {
+		return Arrays.stream(m_features.applyTo(inSpec).getIncludes())
+				.filter(feature -> !feature.equals(m_fold.getStringValue())).toArray(String[]::new);
+	}
+
+	/**
+	 * Create the column re-arranger replacing the features by their binned
+	 * columns, using the model of the fold of each row
+	 * 
+	 * @param inSpec
+	 * @param features
+	 * @param models
+	 * @param folds
+	 * @return the column re-arranger
+	 */
+	private ColumnRearranger createColumnRearranger(DataTableSpec inSpec, String[] features,
+			FrozenBucketList[][] models, ClassDictionary folds) {
+		DataColumnSpec[] colSpecs = new DataColumnSpec[features.length];
+		int[] colIndices = new int[features.length];
+		for (int f = 0; f < features.length; f++) {
+			colSpecs[f] = LucsKddDnNodeModel.createOutputColumnSpec(features[f], false, m_divisions.getIntValue());
+			colIndices[f] = inSpec.findColumnIndex(features[f]);
+		}
+		ColumnRearranger outputTable = new ColumnRearranger(inSpec);
+		if (features.length > 0)
+			outputTable.replace(new LucsKddDnFoldCellFactory(colSpecs, models, folds, colIndices,
+					inSpec.findColumnIndex(m_fold.getStringValue())), colIndices);
+		return outputTable;
+	}
+
+	/**
+	 * @param inSpec
+	 * @return the specification of the table describing the divisions of each
+	 *         fold
+	 */
+	private DataTableSpec createDivisionsSpec(DataTableSpec inSpec) {
+		return new DataTableSpec(
+				new DataColumnSpecCreator("Fold", inSpec.getColumnSpec(m_fold.getStringValue()).getType())
+						.createSpec(),
+				new DataColumnSpecCreator("Feature", StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Category", StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Upper bound", DoubleCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Dominant class", inSpec.getColumnSpec(m_class.getStringValue()).getType())
+						.createSpec());
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		DataTableSpec inputSpec = (DataTableSpec) inSpecs[0];
+
+		// check if input table contains nominal class attribute
+		DataColumnSpec columnSpec = inputSpec.getColumnSpec(m_class.getStringValue());
+		if (columnSpec == null || !columnSpec.getType().isCompatible(NominalValue.class)) {
+			// if no useful column is selected guess one
+			// get the first useful one starting at the end of the table
+			columnSpec = null;
+			for (int i = inputSpec.getNumColumns() - 1; i >= 0; i--) {
+				if (inputSpec.getColumnSpec(i).getType().isCompatible(NominalValue.class)) {
+					columnSpec = inputSpec.getColumnSpec(i);
+					m_class.setStringValue(columnSpec.getName());
+					break;
+				}
+			}
+			if (columnSpec == null)
+				throw new InvalidSettingsException("Table contains no nominal class attribute.");
+		}
+
+		// check the fold column
+		DataColumnSpec foldSpec = inputSpec.getColumnSpec(m_fold.getStringValue());
+		if (foldSpec == null)
+			throw new InvalidSettingsException("Select the fold column.");
+		if (!foldSpec.getType().isCompatible(NominalValue.class) && !foldSpec.getType().isCompatible(IntValue.class))
+			throw new InvalidSettingsException("Fold column is neither nominal nor integer: " + foldSpec.getName());
+		if (foldSpec.getName().equals(m_class.getStringValue()))
+			throw new InvalidSettingsException("The fold column must differ from the class column.");
+
+		String[] features = getFeatures(inputSpec);
+		return new PortObjectSpec[] {
+				LucsKddDnNodeModel.createColumnRearranger(inputSpec, features, null, false, m_divisions.getIntValue())
+						.createSpec(),
+				createDivisionsSpec(inputSpec) };
+	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		m_divisions.saveSettingsTo(settings);
+		m_autoDivisions.saveSettingsTo(settings);
+		m_tolerance.saveSettingsTo(settings);
+		m_threads.saveSettingsTo(settings);
+		m_class.saveSettingsTo(settings);
+		m_fold.saveSettingsTo(settings);
+		m_features.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_divisions.loadSettingsFrom(settings);
+		m_autoDivisions.loadSettingsFrom(settings);
+		m_tolerance.loadSettingsFrom(settings);
+		m_threads.loadSettingsFrom(settings);
+		m_class.loadSettingsFrom(settings);
+		m_fold.loadSettingsFrom(settings);
+		m_features.loadSettingsFrom(settings);
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_divisions.validateSettings(settings);
+		m_autoDivisions.validateSettings(settings);
+		m_tolerance.validateSettings(settings);
+		m_threads.validateSettings(settings);
+		m_class.validateSettings(settings);
+		m_fold.validateSettings(settings);
+		m_features.validateSettings(settings);
+	}
+
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void reset() {
+		// Nothing to do.
+	}
+}
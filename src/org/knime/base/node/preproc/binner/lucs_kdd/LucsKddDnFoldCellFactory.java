@@ -0,0 +1,79 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.AbstractCellFactory;
+
+/**
+ * Cell factory producing the binned columns of all features of a row with the
+ * model fitted on all folds except the fold of the row (out-of-fold binning).
+ * Rows of unknown or missing folds get missing cells. The factory is
+ * stateless, so rows are processed in parallel.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class LucsKddDnFoldCellFactory extends AbstractCellFactory {
+
+	// fitted model of each feature for each fold
+	private FrozenBucketList[][] buckets;
+
+	// dictionary of the fold values
+	private ClassDictionary folds;
+
+	// position of each feature and of the fold column
+	private int[] colIndices;
+	private int foldIndex;
+
+	/**
+	 * @param colSpecs
+	 *            specification of the binned column of each feature
+	 * @param buckets
+	 *            fitted model of each feature for each fold, indexed by the
+	 *            ordinal of the fold
+	 * @param folds
+	 *            dictionary of the fold values
+	 * @param colIndices
+	 *            position of each feature in the input table
+	 * @param foldIndex
+	 *            position of the fold column in the input table
+	 */
+	public LucsKddDnFoldCellFactory(DataColumnSpec[] colSpecs, FrozenBucketList[][] buckets, ClassDictionary folds,
+			int[] colIndices, int foldIndex) {
+		super(true, colSpecs);
+		this.buckets = buckets;
+		this.folds = folds;
+		this.colIndices = colIndices;
+		this.foldIndex = foldIndex;
+	}
+
+	@Override
+	public DataCell[] getCells(DataRow row) {
+
+		// get the models of the fold of the row
+		DataCell fold = row.getCell(this.foldIndex);
+		int f = fold.isMissing() ? -1 : this.folds.find(fold);
+
+		DataCell[] categories = new DataCell[this.colIndices.length];
+		for (int i = 0; i < categories.length; i++) {
+
+			// get value of feature
+			DataCell val = row.getCell(this.colIndices[i]);
+
+			// check if value or fold is missing
+			if (val.isMissing() || f < 0) {
+				categories[i] = DataType.getMissingCell();
+			}
+
+			else {
+				// obtain category
+				double value = ((DoubleValue) val).getDoubleValue();
+				categories[i] = this.buckets[f][i].getCell(value);
+			}
+		}
+		return categories;
+	}
+}
@@ -0,0 +1,342 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+
+import javax.swing.JComponent;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.util.NonClosableInputStream;
+import org.knime.core.data.util.NonClosableOutputStream;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContent;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.port.AbstractPortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortObjectZipInputStream;
+import org.knime.core.node.port.PortObjectZipOutputStream;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.PortTypeRegistry;
+
+/**
+ * LUCS-KDD DN histogram state: the grid and the class frequencies of the
+ * initial buckets of each feature, before dominant classes are determined and
+ * buckets are merged. The state is updated with added and retracted rows and
+ * fitted into a model by the LUCS-KDD Histogram Update node.
+ * 
+ * The class values are saved once as model content, the grids and the
+ * non-zero class frequencies of all features in a compact binary entry
+ * referring to the class values by ordinal.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class LucsKddDnHistogramPortObject extends AbstractPortObject {
+
+	/**
+	 * Serializer for the histogram state
+	 */
+	public static final class Serializer extends AbstractPortObjectSerializer<LucsKddDnHistogramPortObject> {
+	}
+
+	/**
+	 * The port type of the histogram state
+	 */
+	public static final PortType TYPE = PortTypeRegistry.getInstance()
+			.getPortType(LucsKddDnHistogramPortObject.class);
+
+	/**
+	 * The optional port type of the histogram state
+	 */
+	public static final PortType TYPE_OPTIONAL = PortTypeRegistry.getInstance()
+			.getPortType(LucsKddDnHistogramPortObject.class, true);
+
+	private static final String CLASSES_ENTRY = "classes.xml";
+	private static final String HISTOGRAMS_ENTRY = "histograms.bin";
+	private static final String CFG_CLASSES = "classes";
+	private static final String CFG_VALUES = "values";
+	private static final int VERSION = 1;
+
+	private LucsKddDnHistogramPortObjectSpec spec;
+	private ClassDictionary classes;
+	private BucketList[] histograms;
+
+	/**
+	 * Constructor used by the serializer
+	 */
+	public LucsKddDnHistogramPortObject() {
+	}
+
+	/**
+	 * @param spec
+	 * @param classes
+	 *            dictionary of the class values
+	 * @param histograms
+	 *            the initial buckets of each feature
+	 */
+	public LucsKddDnHistogramPortObject(LucsKddDnHistogramPortObjectSpec spec, ClassDictionary classes,
+			BucketList[] histograms) {
+		this.spec = spec;
+		this.classes = classes;
+		this.histograms = histograms;
+	}
+
+	@Override
+	protected void save(final PortObjectZipOutputStream out, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+
+		// save the class values
+		DataCell[] values = new DataCell[this.classes.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = this.classes.get(i);
+		}
+		ModelContent content = new ModelContent(CFG_CLASSES);
+		content.addDataCellArray(CFG_VALUES, values);
+		out.putNextEntry(new ZipEntry(CLASSES_ENTRY));
+		content.saveToXML(new NonClosableOutputStream.Zip(out));
+
+		// save the grid and the non-zero class frequencies of the buckets of
+		// each feature
+		out.putNextEntry(new ZipEntry(HISTOGRAMS_ENTRY));
+		try (DataOutputStream data = new DataOutputStream(
+				new BufferedOutputStream(new NonClosableOutputStream.Zip(out)))) {
+			data.writeInt(VERSION);
+			data.writeInt(this.histograms.length);
+			for (BucketList histogram : this.histograms) {
+				exec.checkCanceled();
+				data.writeUTF(histogram.getFeature());
+				data.writeUTF(histogram.getGrid().name());
+				data.writeDouble(histogram.getLow());
+				data.writeDouble(histogram.getUpp());
+				data.writeInt(histogram.getN());
+				data.writeBoolean(histogram.isIntFeature());
+				double[] upperBounds = histogram.getUpperBounds();
+				data.writeInt(upperBounds == null ? -1 : upperBounds.length);
+				if (upperBounds != null) {
+					for (double bound : upperBounds) {
+						data.writeDouble(bound);
+					}
+				}
+				ArrayList<Bucket> buckets = histogram.getBuckets();
+				data.writeInt(buckets.size());
+				for (Bucket bucket : buckets) {
+					ClassFrequencies freqs = bucket.getClassFreqTable();
+					int nonZero = 0;
+					for (int slot = 0; slot < freqs.slots(); slot++) {
+						if (freqs.classAt(slot) >= 0)
+							nonZero++;
+					}
+					data.writeInt(nonZero);
+					for (int slot = 0; slot < freqs.slots(); slot++) {
+						if (freqs.classAt(slot) >= 0) {
+							data.writeInt(freqs.classAt(slot));
+							data.writeLong(freqs.countAt(slot));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void load(final PortObjectZipInputStream in, final PortObjectSpec spec, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		this.spec = (LucsKddDnHistogramPortObjectSpec) spec;
+
+		// load the class values
+		nextEntry(in, CLASSES_ENTRY);
+		this.classes = new ClassDictionary();
+		try {
+			for (DataCell value : ModelContent.loadFromXML(new NonClosableInputStream.Zip(in))
+					.getDataCellArray(CFG_VALUES)) {
+				this.classes.indexOf(value);
+			}
+		} catch (InvalidSettingsException e) {
+			throw new IOException("Invalid class values: " + e.getMessage(), e);
+		}
+
+		// load the grid and the class frequencies of each feature
+		nextEntry(in, HISTOGRAMS_ENTRY);
+		try (DataInputStream data = new DataInputStream(
+				new BufferedInputStream(new NonClosableInputStream.Zip(in)))) {
+			int version = data.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported histogram state version: " + version);
+			this.histograms = new BucketList[data.readInt()];
+			for (int f = 0; f < this.histograms.length; f++) {
+				exec.checkCanceled();
+				String feature = data.readUTF();
+				BucketList.Grid grid;
+				try {
+					grid = BucketList.Grid.valueOf(data.readUTF());
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid grid of feature " + feature, e);
+				}
+				double low = data.readDouble();
+				double upp = data.readDouble();
+				int N = data.readInt();
+				boolean intFeature = data.readBoolean();
+				int numBounds = data.readInt();
+				double[] upperBounds = null;
+				if (numBounds >= 0) {
+					upperBounds = new double[numBounds];
+					for (int i = 0; i < numBounds; i++) {
+						upperBounds[i] = data.readDouble();
+					}
+				}
+				BucketList histogram = BucketList.create(feature, this.spec.getClassAttr(), this.classes, low, upp, N,
+						intFeature, grid, upperBounds);
+				ArrayList<Bucket> buckets = histogram.getBuckets();
+				if (data.readInt() != buckets.size())
+					throw new IOException("Invalid number of buckets for feature " + feature);
+				for (Bucket bucket : buckets) {
+					int nonZero = data.readInt();
+					for (int j = 0; j < nonZero; j++) {
+						int c = data.readInt();
+						bucket.add(c, data.readLong());
+					}
+				}
+				this.histograms[f] = histogram;
+			}
+		}
+	}
+
+	/**
+	 * Go to the next entry of the port object, which must have the given name
+	 * 
+	 * @param in
+	 * @param name
+	 * @throws IOException
+	 */
+	private static void nextEntry(PortObjectZipInputStream in, String name) throws IOException {
+		ZipEntry entry = in.getNextEntry();
+		if (entry == null || !name.equals(entry.getName()))
+			throw new IOException("Expected entry " + name + " of the histogram state, found "
+					+ (entry == null ? "none" : entry.getName()));
+	}
+
+	@Override
+	public String getSummary() {
+		return "LUCS-KDD DN histogram state for " + this.histograms.length + " features";
+	}
+
+	@Override
+	public LucsKddDnHistogramPortObjectSpec getSpec() {
+		return this.spec;
+	}
+
+	@Override
+	public JComponent[] getViews() {
+		return new JComponent[0];
+	}
+
+	/**
+	 * @return the dictionary of the class values
+	 */
+	public ClassDictionary getClassDictionary() {
+		return this.classes;
+	}
+
+	/**
+	 * @return the initial buckets of each feature, must not be modified
+	 */
+	public BucketList[] getHistograms() {
+		return this.histograms.clone();
+	}
+
+	/**
+	 * @return a copy of the histogram state that can be updated without
+	 *         changing this state
+	 */
+	public LucsKddDnHistogramPortObject copy() {
+		ClassDictionary classes = this.classes.copy();
+		BucketList[] histograms = new BucketList[this.histograms.length];
+		for (int f = 0; f < histograms.length; f++) {
+			histograms[f] = this.histograms[f].copy(classes);
+		}
+		return new LucsKddDnHistogramPortObject(this.spec, classes, histograms);
+	}
+
+	/**
+	 * Combine two partial histogram states of the same features and grids,
+	 * e.g. filled from different partitions of a table. The class frequencies
+	 * of the initial buckets are added, so the result equals the state filled
+	 * from all rows of both partitions.
+	 * 
+	 * @param other
+	 * @return the combined histogram state
+	 * @throws InvalidSettingsException
+	 *             if a state is not a partial state with shared grid bounds,
+	 *             or the states have different class attributes, features or
+	 *             grids
+	 */
+	public LucsKddDnHistogramPortObject combine(LucsKddDnHistogramPortObject other)
+			throws InvalidSettingsException {
+		checkCompatible(this.spec, other.spec);
+		LucsKddDnHistogramPortObject combined = this.copy();
+
+		// translate the class ordinals of the other state
+		int[] classMap = new int[other.classes.size()];
+		for (int c = 0; c < classMap.length; c++) {
+			classMap[c] = combined.classes.indexOf(other.classes.get(c));
+		}
+
+		// add the counts of the feature with the same name
+		for (BucketList histogram : combined.histograms) {
+			BucketList otherHistogram = other.getHistogram(histogram.getFeature());
+			if (!histogram.hasSameGrid(otherHistogram))
+				throw new InvalidSettingsException("The histogram states have different grids for feature "
+						+ histogram.getFeature() + ": [" + histogram.getLow() + ", " + histogram.getUpp() + "] with "
+						+ histogram.getN() + " buckets and [" + otherHistogram.getLow() + ", "
+						+ otherHistogram.getUpp() + "] with " + otherHistogram.getN() + " buckets");
+			histogram.addCounts(otherHistogram, classMap);
+		}
+		return combined;
+	}
+
+	/**
+	 * Check that two histogram states can be combined
+	 * 
+	 * @param spec
+	 * @param other
+	 * @throws InvalidSettingsException
+	 *             if a state is not a partial state with shared grid bounds,
+	 *             or the states have different class attributes or features
+	 */
+	static void checkCompatible(LucsKddDnHistogramPortObjectSpec spec, LucsKddDnHistogramPortObjectSpec other)
+			throws InvalidSettingsException {
+		if (!spec.isCombinable() || !other.isCombinable())
+			throw new InvalidSettingsException("Only partial histogram states with fixed grid bounds for all "
+					+ "features can be combined; create them with the option for partial states of the "
+					+ "LUCS-KDD Histogram Update node");
+		if (!spec.getClassAttr().equals(other.getClassAttr()))
+			throw new InvalidSettingsException("The histogram states have different class attributes: "
+					+ spec.getClassAttr() + " and " + other.getClassAttr());
+		String[] features = spec.getFeatures();
+		String[] otherFeatures = other.getFeatures();
+		Arrays.sort(features);
+		Arrays.sort(otherFeatures);
+		if (!Arrays.equals(features, otherFeatures))
+			throw new InvalidSettingsException("The histogram states have different features");
+	}
+
+	/**
+	 * @param feature
+	 * @return the initial buckets of the feature, must not be modified
+	 */
+	private BucketList getHistogram(String feature) {
+		for (BucketList histogram : this.histograms) {
+			if (histogram.getFeature().equals(feature))
+				return histogram;
+		}
+		return null;
+	}
+}
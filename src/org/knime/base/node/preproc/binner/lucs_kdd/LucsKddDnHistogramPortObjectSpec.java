@@ -0,0 +1,97 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.ModelContentWO;
+import org.knime.core.node.port.AbstractSimplePortObjectSpec;
+
+/**
+ * Specification of the LUCS-KDD DN histogram state: the class column, the
+ * features whose initial buckets are counted, and whether the state is a
+ * partial state that can be combined with other partial states (its grids
+ * are fixed by shared bounds).
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class LucsKddDnHistogramPortObjectSpec extends AbstractSimplePortObjectSpec {
+
+	/**
+	 * Serializer for the spec
+	 */
+	public static final class Serializer extends AbstractSimplePortObjectSpecSerializer<LucsKddDnHistogramPortObjectSpec> {
+	}
+
+	private static final String CFG_CLASS = "class";
+	private static final String CFG_FEATURES = "features";
+	private static final String CFG_COMBINABLE = "combinable";
+
+	private String classAttr;
+	private String[] features;
+	private boolean combinable;
+
+	/**
+	 * Constructor used by the serializer
+	 */
+	public LucsKddDnHistogramPortObjectSpec() {
+		this.classAttr = "";
+		this.features = new String[0];
+	}
+
+	/**
+	 * @param classAttr
+	 * @param features
+	 */
+	public LucsKddDnHistogramPortObjectSpec(String classAttr, String[] features) {
+		this(classAttr, features, false);
+	}
+
+	/**
+	 * @param classAttr
+	 * @param features
+	 * @param combinable
+	 *            true if the grids of all features are fixed by shared
+	 *            bounds, so that the state can be combined
+	 */
+	public LucsKddDnHistogramPortObjectSpec(String classAttr, String[] features, boolean combinable) {
+		this.classAttr = classAttr;
+		this.features = features;
+		this.combinable = combinable;
+	}
+
+	@Override
+	protected void save(final ModelContentWO model) {
+		model.addString(CFG_CLASS, this.classAttr);
+		model.addStringArray(CFG_FEATURES, this.features);
+		model.addBoolean(CFG_COMBINABLE, this.combinable);
+	}
+
+	@Override
+	protected void load(final ModelContentRO model) throws InvalidSettingsException {
+		this.classAttr = model.getString(CFG_CLASS);
+		this.features = model.getStringArray(CFG_FEATURES);
+		this.combinable = model.getBoolean(CFG_COMBINABLE, false);
+	}
+
+	/**
+	 * @return the name of the class column
+	 */
+	public String getClassAttr() {
+		return this.classAttr;
+	}
+
+	/**
+	 * @return the names of the features
+	 */
+	public String[] getFeatures() {
+		return this.features.clone();
+	}
+
+	/**
+	 * @return true if the grids of all features are fixed by shared bounds, so
+	 *         that the state can be combined with other partial states
+	 */
+	public boolean isCombinable() {
+		return this.combinable;
+	}
+}
@@ -0,0 +1,144 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import javax.swing.JComponent;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.ModelContentWO;
+import org.knime.core.node.port.AbstractSimplePortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.PortTypeRegistry;
+
+/**
+ * Fitted LUCS-KDD DN model: the bucket bounds and dominant classes of each
+ * feature (see {@link FrozenBucketList}), and the class values the model was
+ * fitted with in the order of their ordinals.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class LucsKddDnModelPortObject extends AbstractSimplePortObject {
+
+	/**
+	 * Serializer for the model
+	 */
+	public static final class Serializer extends AbstractSimplePortObjectSerializer<LucsKddDnModelPortObject> {
+	}
+
+	/**
+	 * The port type of the model
+	 */
+	public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(LucsKddDnModelPortObject.class);
+
+	private static final String CFG_CLASSES = "classes";
+	private static final String CFG_FEATURE = "feature_";
+	private static final String CFG_NAME = "name";
+	private static final String CFG_UPPER_BOUNDS = "upper_bounds";
+	private static final String CFG_DOMINANT_CLASSES = "dominant_classes";
+	private static final String CFG_LOWER_INT = "lower_int";
+	private static final String CFG_UPPER_INT = "upper_int";
+
+	private LucsKddDnModelPortObjectSpec spec;
+	private ClassDictionary classes;
+	private FrozenBucketList[] models;
+
+	/**
+	 * Constructor used by the serializer
+	 */
+	public LucsKddDnModelPortObject() {
+	}
+
+	/**
+	 * @param spec
+	 * @param classes
+	 *            the class values the models were fitted with
+	 * @param models
+	 *            fitted model of each feature
+	 */
+	public LucsKddDnModelPortObject(LucsKddDnModelPortObjectSpec spec, ClassDictionary classes,
+			FrozenBucketList[] models) {
+		this.spec = spec;
+		this.classes = classes.copy();
+		this.models = models;
+	}
+
+	@Override
+	protected void save(final ModelContentWO model, final ExecutionMonitor exec) throws CanceledExecutionException {
+		DataCell[] classValues = new DataCell[this.classes.size()];
+		for (int c = 0; c < classValues.length; c++) {
+			classValues[c] = this.classes.get(c);
+		}
+		model.addDataCellArray(CFG_CLASSES, classValues);
+		for (int f = 0; f < this.models.length; f++) {
+			ModelContentWO feature = model.addModelContent(CFG_FEATURE + f);
+			feature.addString(CFG_NAME, this.models[f].getFeature());
+			feature.addDoubleArray(CFG_UPPER_BOUNDS, this.models[f].getUpperBounds());
+			feature.addDataCellArray(CFG_DOMINANT_CLASSES, this.models[f].getDominantClasses());
+			feature.addInt(CFG_LOWER_INT, this.models[f].getLowerInt());
+			feature.addInt(CFG_UPPER_INT, this.models[f].getUpperInt());
+		}
+	}
+
+	@Override
+	protected void load(final ModelContentRO model, final PortObjectSpec spec, final ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+		this.spec = (LucsKddDnModelPortObjectSpec) spec;
+		this.models = new FrozenBucketList[this.spec.getFeatures().length];
+		for (int f = 0; f < this.models.length; f++) {
+			ModelContentRO feature = model.getModelContent(CFG_FEATURE + f);
+			this.models[f] = new FrozenBucketList(feature.getString(CFG_NAME),
+					feature.getDoubleArray(CFG_UPPER_BOUNDS), feature.getDataCellArray(CFG_DOMINANT_CLASSES),
+					feature.getInt(CFG_LOWER_INT), feature.getInt(CFG_UPPER_INT));
+		}
+
+		// models saved without their class values know only the dominant
+		// classes
+		this.classes = new ClassDictionary();
+		if (model.containsKey(CFG_CLASSES)) {
+			for (DataCell classVal : model.getDataCellArray(CFG_CLASSES)) {
+				this.classes.indexOf(classVal);
+			}
+		} else {
+			for (FrozenBucketList m : this.models) {
+				for (DataCell dominantClass : m.getDominantClasses()) {
+					if (dominantClass != null)
+						this.classes.indexOf(dominantClass);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getSummary() {
+		return "LUCS-KDD DN model for " + this.models.length + " features";
+	}
+
+	@Override
+	public LucsKddDnModelPortObjectSpec getSpec() {
+		return this.spec;
+	}
+
+	@Override
+	public JComponent[] getViews() {
+		return new JComponent[0];
+	}
+
+	/**
+	 * @return the fitted model of each feature
+	 */
+	public FrozenBucketList[] getModels() {
+		return this.models.clone();
+	}
+
+	/**
+	 * @return a copy of the dictionary of the class values the models were
+	 *         fitted with
+	 */
+	public ClassDictionary getClassDictionary() {
+		return this.classes.copy();
+	}
+}
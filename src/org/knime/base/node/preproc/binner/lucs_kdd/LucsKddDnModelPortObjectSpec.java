@@ -0,0 +1,119 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.ModelContentWO;
+import org.knime.core.node.port.AbstractSimplePortObjectSpec;
+
+/**
+ * Specification of the LUCS-KDD DN model: the class column and the features
+ * the model was fitted on, and the format and maximal number of the categories
+ * of the binned columns, so that their domain is known at configure time.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class LucsKddDnModelPortObjectSpec extends AbstractSimplePortObjectSpec {
+
+	/**
+	 * Serializer for the spec
+	 */
+	public static final class Serializer extends AbstractSimplePortObjectSpecSerializer<LucsKddDnModelPortObjectSpec> {
+	}
+
+	private static final String CFG_CLASS = "class";
+	private static final String CFG_FEATURES = "features";
+	private static final String CFG_CODES = "codes";
+	private static final String CFG_DIVISIONS = "divisions";
+
+	private String classAttr;
+	private String[] features;
+
+	// output integer codes instead of interval labels
+	private boolean codes;
+
+	// maximal number of categories of each feature, -1 if not known
+	private int divisions;
+
+	/**
+	 * Constructor used by the serializer
+	 */
+	public LucsKddDnModelPortObjectSpec() {
+		this.classAttr = "";
+		this.features = new String[0];
+		this.codes = false;
+		this.divisions = -1;
+	}
+
+	/**
+	 * @param classAttr
+	 * @param features
+	 */
+	public LucsKddDnModelPortObjectSpec(String classAttr, String[] features) {
+		this(classAttr, features, false, -1);
+	}
+
+	/**
+	 * @param classAttr
+	 * @param features
+	 * @param codes
+	 *            true if the binned columns contain integer codes
+	 * @param divisions
+	 *            maximal number of categories of each feature, -1 if not
+	 *            known
+	 */
+	public LucsKddDnModelPortObjectSpec(String classAttr, String[] features, boolean codes, int divisions) {
+		this.classAttr = classAttr;
+		this.features = features;
+		this.codes = codes;
+		this.divisions = divisions;
+	}
+
+	@Override
+	protected void save(final ModelContentWO model) {
+		model.addString(CFG_CLASS, this.classAttr);
+		model.addStringArray(CFG_FEATURES, this.features);
+		model.addBoolean(CFG_CODES, this.codes);
+		model.addInt(CFG_DIVISIONS, this.divisions);
+	}
+
+	@Override
+	protected void load(final ModelContentRO model) throws InvalidSettingsException {
+		this.classAttr = model.getString(CFG_CLASS);
+		this.features = model.getStringArray(CFG_FEATURES);
+
+		// models saved before the output format was stored
+		this.codes = model.getBoolean(CFG_CODES, false);
+		this.divisions = model.getInt(CFG_DIVISIONS, -1);
+	}
+
+	/**
+	 * @return the name of the class column
+	 */
+	public String getClassAttr() {
+		return this.classAttr;
+	}
+
+	/**
+	 * @return the names of the features
+	 */
+	public String[] getFeatures() {
+		return this.features.clone();
+	}
+
+	/**
+	 * @return true if the binned columns contain integer codes instead of
+	 *         interval labels
+	 */
+	public boolean isCodes() {
+		return this.codes;
+	}
+
+	/**
+	 * @return the maximal number of categories of each feature, -1 if not
+	 *         known
+	 */
+	public int getDivisions() {
+		return this.divisions;
+	}
+}
@@ -2,9 +2,12 @@ package org.knime.base.node.preproc.binner.lucs_kdd;
 
 import org.knime.core.data.NominalValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter2;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
 
 
 /**
@@ -39,6 +42,58 @@ public class LucsKddDnNodeDialog extends DefaultNodeSettingsPane {
     	addDialogComponent(new DialogComponentNumber(
     			LucsKddDnNodeModel.createNumDivisionsModel(), "Max. number of divisions:", 1));
     	
+    	// grid of the initial buckets
+    	addDialogComponent(new DialogComponentButtonGroup(
+    			LucsKddDnNodeModel.createInitialBucketsModel(), false, "Initial buckets:",
+    			LucsKddDnNodeModel.EQUAL_WIDTH, LucsKddDnNodeModel.EQUAL_FREQUENCY,
+    			LucsKddDnNodeModel.DISTINCT_VALUES));
+    	
+    	// largest number of initial buckets
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createResolutionModel(), "Max. number of initial buckets:", 10));
+    	addDialogComponent(new DialogComponentString(
+    			LucsKddDnNodeModel.createResolutionOverridesModel(), 
+    			"Max. number of initial buckets of single features (feature=N, ...):", false, 40));
+    	
+    	// fit the buckets on all rows or on a random sample
+    	// (a sample first counts the rows with a pass over the class column)
+    	addDialogComponent(new DialogComponentButtonGroup(
+    			LucsKddDnNodeModel.createSamplingModel(), "Fit on:", false,
+    			new String[] { LucsKddDnNodeModel.ALL_ROWS,
+    					LucsKddDnNodeModel.UNIFORM_SAMPLE + " (extra pass over the class column)",
+    					LucsKddDnNodeModel.STRATIFIED_SAMPLE + " (extra pass over the class column)" },
+    			new String[] { LucsKddDnNodeModel.ALL_ROWS, LucsKddDnNodeModel.UNIFORM_SAMPLE,
+    					LucsKddDnNodeModel.STRATIFIED_SAMPLE }));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createSampleSizeModel(), "Sample size (rows):", 10000));
+    	
+    	// select the number of divisions automatically
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnNodeModel.createAutoDivisionsModel(), "Select number of divisions automatically"));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createToleranceModel(), "Accuracy tolerance:", 0.01));
+    	
+    	// count the features of wide tables in flat count tensors
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnNodeModel.createWideTableModel(), "Wide-table mode"));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createMemoryBudgetModel(), "Memory budget of the counts (MB):", 64));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createColumnBudgetModel(), "Heap budget of the extracted columns (MB):", 256));
+    	
+    	// format of the binned columns
+    	addDialogComponent(new DialogComponentButtonGroup(
+    			LucsKddDnNodeModel.createOutputModel(), false, "Output:",
+    			LucsKddDnNodeModel.LABELS, LucsKddDnNodeModel.CODES));
+    	
+    	// number of threads used to fit the features
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createNumThreadsModel(), "Number of threads:", 1));
+    	
+    	// bound of the cache of fitted models
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createCacheSizeModel(), "Cache size of fitted models (MB):", 16));
+    	
     	// choose features
     	addDialogComponent(new DialogComponentColumnFilter2(
     		LucsKddDnNodeModel.createIncludedFeaturesModel(), 0));                     
@@ -2,19 +2,38 @@ package org.knime.base.node.preproc.binner.lucs_kdd;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnDomainCreator;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DoubleValue;
 import org.knime.core.data.IntValue;
 import org.knime.core.data.NominalValue;
-import org.knime.core.data.container.AbstractCellFactory;
 import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColumnFilter2;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
@@ -25,6 +44,17 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.streamable.DataTableRowInput;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortObjectOutput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.StreamableOperator;
 
 /**
  * This is the model implementation of KDD. LUCS-KDD DN (Discretisation/
@@ -44,132 +74,945 @@ public class LucsKddDnNodeModel extends NodeModel {
 	 */
 
 	// class attribute
-	private static final SettingsModelString m_class = createClassColModel();
+	private final SettingsModelString m_class = createClassColModel();
 
 	protected static SettingsModelString createClassColModel() {
 		return new SettingsModelString("Class Column", "");
 	}
 
 	// desired number of divisions
-	private static SettingsModelIntegerBounded m_divisions = createNumDivisionsModel();
+	private final SettingsModelIntegerBounded m_divisions = createNumDivisionsModel();
 
 	protected static SettingsModelIntegerBounded createNumDivisionsModel() {
 		return new SettingsModelIntegerBounded("Divisions", 5, 1, Integer.MAX_VALUE);
 	}
 
+	// grid of the initial buckets
+	static final String EQUAL_WIDTH = "Equal width";
+	static final String EQUAL_FREQUENCY = "Equal frequency";
+	static final String DISTINCT_VALUES = "Distinct values";
+	static final String CFG_INITIAL_BUCKETS = "Initial buckets";
+	private final SettingsModelString m_initialBuckets = createInitialBucketsModel();
+
+	protected static SettingsModelString createInitialBucketsModel() {
+		return new SettingsModelString(CFG_INITIAL_BUCKETS, EQUAL_WIDTH);
+	}
+
+	// largest number of initial buckets of each feature
+	static final String CFG_RESOLUTION = "Resolution";
+	private final SettingsModelIntegerBounded m_resolution = createResolutionModel();
+
+	protected static SettingsModelIntegerBounded createResolutionModel() {
+		return new SettingsModelIntegerBounded(CFG_RESOLUTION, BucketList.DEFAULT_RESOLUTION, 1, Integer.MAX_VALUE);
+	}
+
+	// largest number of initial buckets of single features
+	static final String CFG_RESOLUTION_OVERRIDES = "Resolution overrides";
+	private final SettingsModelString m_resolutionOverrides = createResolutionOverridesModel();
+
+	protected static SettingsModelString createResolutionOverridesModel() {
+		return new SettingsModelString(CFG_RESOLUTION_OVERRIDES, "");
+	}
+
+	// fit the buckets on all rows or on a random sample
+	static final String ALL_ROWS = "All rows";
+	static final String UNIFORM_SAMPLE = "Uniform sample";
+	static final String STRATIFIED_SAMPLE = "Stratified sample";
+	static final String CFG_SAMPLING = "Sampling";
+	private final SettingsModelString m_sampling = createSamplingModel();
+
+	protected static SettingsModelString createSamplingModel() {
+		return new SettingsModelString(CFG_SAMPLING, ALL_ROWS);
+	}
+
+	// number of sampled rows
+	static final String CFG_SAMPLE_SIZE = "Sample size";
+	private final SettingsModelIntegerBounded m_sampleSize = createSampleSizeModel();
+
+	protected static SettingsModelIntegerBounded createSampleSizeModel() {
+		return new SettingsModelIntegerBounded(CFG_SAMPLE_SIZE, 100000, 1, Integer.MAX_VALUE);
+	}
+
+	// quantile of the standard normal distribution for the 95% confidence
+	// intervals of the dominant classes of a sampled fit
+	private static final double Z_95 = 1.96;
+
+	// count the features of wide tables in flat count tensors
+	static final String CFG_WIDE_TABLE = "Wide-table mode";
+	private final SettingsModelBoolean m_wideTable = createWideTableModel();
+
+	protected static SettingsModelBoolean createWideTableModel() {
+		return new SettingsModelBoolean(CFG_WIDE_TABLE, false);
+	}
+
+	// memory budget of the count tensors in MB
+	static final String CFG_MEMORY_BUDGET = "Memory budget";
+	private final SettingsModelIntegerBounded m_memoryBudget = createMemoryBudgetModel();
+
+	protected static SettingsModelIntegerBounded createMemoryBudgetModel() {
+		return new SettingsModelIntegerBounded(CFG_MEMORY_BUDGET, 256, 1, Integer.MAX_VALUE);
+	}
+
+	// heap budget of the extracted columns in MB
+	static final String CFG_COLUMN_BUDGET = "Column heap budget";
+	private final SettingsModelIntegerBounded m_columnBudget = createColumnBudgetModel();
+
+	protected static SettingsModelIntegerBounded createColumnBudgetModel() {
+		return new SettingsModelIntegerBounded(CFG_COLUMN_BUDGET, 1024, 0, Integer.MAX_VALUE);
+	}
+
+	// format of the binned columns
+	static final String LABELS = "Interval labels";
+	static final String CODES = "Integer codes";
+	static final String CFG_OUTPUT = "Output";
+	private final SettingsModelString m_output = createOutputModel();
+
+	protected static SettingsModelString createOutputModel() {
+		return new SettingsModelString(CFG_OUTPUT, LABELS);
+	}
+
+	// select the number of divisions automatically
+	static final String CFG_AUTO_DIVISIONS = "Automatic divisions";
+	private final SettingsModelBoolean m_autoDivisions = createAutoDivisionsModel();
+
+	protected static SettingsModelBoolean createAutoDivisionsModel() {
+		return new SettingsModelBoolean(CFG_AUTO_DIVISIONS, false);
+	}
+
+	// tolerated loss of accuracy for the automatic selection of divisions
+	static final String CFG_TOLERANCE = "Accuracy tolerance";
+	private final SettingsModelDoubleBounded m_tolerance = createToleranceModel();
+
+	protected static SettingsModelDoubleBounded createToleranceModel() {
+		return new SettingsModelDoubleBounded(CFG_TOLERANCE, 0.01, 0, 1);
+	}
+
+	// number of threads used to fit the features
+	static final String CFG_THREADS = "Threads";
+	private final SettingsModelIntegerBounded m_threads = createNumThreadsModel();
+
+	protected static SettingsModelIntegerBounded createNumThreadsModel() {
+		return new SettingsModelIntegerBounded(CFG_THREADS, Runtime.getRuntime().availableProcessors(), 1,
+				Integer.MAX_VALUE);
+	}
+
+	// bound of the cache of fitted models in MB
+	static final String CFG_CACHE_SIZE = "Cache size";
+	private final SettingsModelIntegerBounded m_cacheSize = createCacheSizeModel();
+
+	protected static SettingsModelIntegerBounded createCacheSizeModel() {
+		return new SettingsModelIntegerBounded(CFG_CACHE_SIZE, FitCache.DEFAULT_MAX_MB, 0, Integer.MAX_VALUE);
+	}
+
 	// select variables
-	private static final SettingsModelColumnFilter2 m_features = createIncludedFeaturesModel();
+	private final SettingsModelColumnFilter2 m_features = createIncludedFeaturesModel();
 
 	@SuppressWarnings("unchecked")
 	protected static SettingsModelColumnFilter2 createIncludedFeaturesModel() {
 		return new SettingsModelColumnFilter2("Included features", DoubleValue.class, IntValue.class);
 	}
 
+	// models of previous executions
+	private final FitCache m_cache = new FitCache(FitCache.DEFAULT_MAX_MB * (1L << 20));
+
+	// cache keys of the features of the last execution
+	private List<String> m_keys = new ArrayList<>();
+
+	// the fitted model of each feature and the content hash of the data it
+	// was fitted on, null if the node is not executed
+	private FrozenBucketList[] m_models;
+	private long[] m_hashes;
+
 	/**
 	 * Constructor for the node model.
 	 */
 	protected LucsKddDnNodeModel() {
-		super(1, 1);
+		super(new PortType[] { BufferedDataTable.TYPE },
+				new PortType[] { BufferedDataTable.TYPE, LucsKddDnModelPortObject.TYPE });
 	}
 
 	@Override
-	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
-			throws Exception {
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
 
 		LOGGER.info("Starting LucsKddDnNodeModel.execute()");
 
 		// input data
-		BufferedDataTable input = inData[0];
+		BufferedDataTable input = (BufferedDataTable) inData[0];
+
+		// fit the buckets of all features
+		FrozenBucketList[] models = fit(input, exec.createSubProgress(0.5));
+
+		// create the column re-arranger for the output table
+		ColumnRearranger outputTable = createColumnRearranger(input.getDataTableSpec(), getFeatures(models),
+				models, isCodes(), m_divisions.getIntValue());
+
+		// create the output table
+		BufferedDataTable bufferedOutput = exec.createColumnRearrangeTable(input, outputTable, exec.createSubProgress(0.5));
+
+		return new PortObject[] { bufferedOutput, createModel(input.getDataTableSpec(), models) };
+
+	}
+
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+
+		// the buckets are fitted on the complete input table before the rows
+		// are binned
+		return new InputPortRole[] { InputPortRole.NONDISTRIBUTED_NONSTREAMABLE };
+	}
+
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+			final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		return new StreamableOperator() {
+
+			@Override
+			public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec)
+					throws Exception {
+
+				// fit the buckets on the input table
+				BufferedDataTable input = (BufferedDataTable) ((PortObjectInput) inputs[0]).getPortObject();
+				FrozenBucketList[] models = fit(input, exec.createSubProgress(0.5));
+
+				// bin the rows one by one
+				createColumnRearranger(input.getDataTableSpec(), getFeatures(models), models, isCodes(),
+						m_divisions.getIntValue()).createStreamableFunction().runFinal(new PortInput[] { new DataTableRowInput(input) },
+								new PortOutput[] { outputs[0] }, exec.createSubExecutionContext(0.5));
+
+				// output the model
+				((PortObjectOutput) outputs[1]).setPortObject(createModel(input.getDataTableSpec(), models));
+			}
+		};
+	}
+
+	/**
+	 * Fit the buckets of all selected features on the input table. The
+	 * features without a cached model for their settings are fitted with the
+	 * first pass over the table, which also takes the content hash of all
+	 * features. The cached models whose feature or class column changed are
+	 * fitted with a second pass, which reads only their columns.
+	 * 
+	 * @param input
+	 * @param exec
+	 * @return the fitted model of each feature
+	 * @throws Exception
+	 */
+	private FrozenBucketList[] fit(BufferedDataTable input, ExecutionMonitor exec) throws Exception {
 
 		// input table scheme
 		DataTableSpec inSpec = input.getDataTableSpec();
 
 		// get features for discretization
 		String[] features = m_features.applyTo(inSpec).getIncludes();
+		if (features.length == 0) {
+			m_models = new FrozenBucketList[0];
+			m_hashes = new long[0];
+			m_keys = new ArrayList<>();
+			return m_models;
+		}
 
-		// create the column re-arranger for the output table
-		ColumnRearranger outputTable = new ColumnRearranger(inSpec);
+		// look up the features whose settings did not change
+		String classAttr = m_class.getStringValue();
+		String sampling = m_sampling.getStringValue();
+		String[] keys = FitCache.keys(inSpec, features, classAttr,
+				"divisions=" + m_divisions.getIntValue() + ",tolerance=" + getTolerance() + ",grid="
+						+ getGrid(m_initialBuckets.getStringValue()) + ",resolution=" + m_resolution.getIntValue()
+						+ ",overrides=" + new TreeMap<>(parseResolutions(m_resolutionOverrides.getStringValue()))
+						+ ",sampling=" + sampling
+						+ (ALL_ROWS.equals(sampling) ? "" : ",sampleSize=" + m_sampleSize.getIntValue()));
+		m_cache.setMaxBytes(m_cacheSize.getIntValue() * (1L << 20));
+		int[] misses = new int[features.length];
+		int n = 0;
+		for (int f = 0; f < features.length; f++) {
+			if (!m_cache.containsKey(keys[f]))
+				misses[n++] = f;
+		}
+
+		// fit the other features and hash the content of all features
+		FrozenBucketList[] models = new FrozenBucketList[features.length];
+		ContentHash hashes = new ContentHash(inSpec, features, classAttr);
+		int[] stability = new int[2];
+		ExecutionMonitor firstExec = exec.createSubProgress(n == features.length ? 1 : 0.5);
+		if (n > 0)
+			fit(input, features, Arrays.copyOf(misses, n), hashes, models, stability, firstExec);
+		if (!hashes.isComplete(input.size()))
+			hashes.scan(input, n > 0 ? exec.createSubProgress(0) : firstExec);
+
+		// reuse the cached models fitted on the same content
+		int[] stale = new int[features.length - n];
+		int m = 0;
+		for (int f = 0; f < features.length; f++) {
+			if (models[f] != null)
+				continue;
+			models[f] = m_cache.get(keys[f], hashes.get(f));
+			if (models[f] == null)
+				stale[m++] = f;
+		}
+		LOGGER.debug("Fitted " + n + " new and " + m + " changed of " + features.length
+				+ " features, the others are cached");
+		if (m > 0)
+			fit(input, features, Arrays.copyOf(stale, m), null, models, stability, exec.createSubProgress(0.5));
 
-		// cell factory
-		AbstractCellFactory cellFactory;
+		// cache the models of this execution
+		m_hashes = new long[features.length];
+		for (int f = 0; f < features.length; f++) {
+			m_hashes[f] = hashes.get(f);
+			m_cache.put(keys[f], m_hashes[f], models[f]);
+		}
+		m_keys = Arrays.asList(keys);
+		m_models = models;
+		return models;
+	}
+
+	/**
+	 * Fit the buckets of some of the selected features on the input table
+	 * 
+	 * @param input
+	 * @param features
+	 *            the selected features
+	 * @param positions
+	 *            positions of the features to fit
+	 * @param hashes
+	 *            receives every row of the first pass over the table, null
+	 *            if no content hash is taken
+	 * @param models
+	 *            receives the fitted model of each feature
+	 * @param stability
+	 *            number of divisions and number of divisions without
+	 *            significant dominant class, updated for a sampled fit
+	 * @param exec
+	 * @throws Exception
+	 */
+	private void fit(BufferedDataTable input, String[] features, int[] positions, ContentHash hashes,
+			FrozenBucketList[] models, int[] stability, ExecutionMonitor exec) throws Exception {
+		DataTableSpec inSpec = input.getDataTableSpec();
+		String classAttr = m_class.getStringValue();
+		int divisions = m_divisions.getIntValue();
+		double tolerance = getTolerance();
+		BucketList.Grid grid = getGrid(m_initialBuckets.getStringValue());
+		int resolution = m_resolution.getIntValue();
+		Map<String, Integer> overrides = parseResolutions(m_resolutionOverrides.getStringValue());
+		String sampling = m_sampling.getStringValue();
+		int sampleSize = m_sampleSize.getIntValue();
+		int n = positions.length;
 
 		LOGGER.debug("\n\nCREATED BUCKETS");
 		LOGGER.debug("------------------------------------------------");
 
-		// loop over features
-		for (String feature : features) {
+		// create initial buckets for all features to fit
+		ClassDictionary classes = ClassDictionary.fromDomain(inSpec.getColumnSpec(classAttr));
+		BucketList[] bucketLists = new BucketList[n];
+		for (int f = 0; f < n; f++) {
+			bucketLists[f] = new BucketList(features[positions[f]], classAttr, input, classes);
+			bucketLists[f].setGrid(grid);
+			bucketLists[f].setResolution(overrides.getOrDefault(features[positions[f]], resolution));
+		}
+		ExecutionMonitor fillExec = exec.createSubProgress(0.75);
+		ExecutionMonitor fitExec = exec.createSubProgress(0.25);
+		RowSample sample = null;
+		if (UNIFORM_SAMPLE.equals(sampling))
+			sample = RowSample.uniform(input, classAttr, classes, sampleSize, 0, fillExec.createSubProgress(0.1));
+		else if (STRATIFIED_SAMPLE.equals(sampling))
+			sample = RowSample.stratified(input, classAttr, classes, sampleSize, 0, fillExec.createSubProgress(0.1));
 
-			// create initial buckets and fill them
-			BucketList buckets = new BucketList(feature, m_class.getStringValue(), inData[0]);
-			buckets.fill();
+		// in wide-table mode, the features with an equal-width grid within
+		// their domain bounds are counted in flat count tensors
+		List<Integer> regular = new ArrayList<>();
+		List<Integer> wide = new ArrayList<>();
+		for (int f = 0; f < n; f++) {
+			if (m_wideTable.getBooleanValue() && grid == BucketList.Grid.EQUAL_WIDTH
+					&& inSpec.getColumnSpec(features[positions[f]]).getDomain().hasBounds())
+				wide.add(f);
+			else
+				regular.add(f);
+		}
+		int threads = m_threads.getIntValue();
+		boolean sampled = sample != null;
 
-			// for each bucket determine the dominant class
-			// for buckets without dominant class, the dominant class is imputed
-			// from the nearest buckets
-			buckets.determineDominantClasses();
+		// fill the buckets of the other features with a single pass over the
+		// input table and merge them into divisions, in parallel if more
+		// than one thread is configured
+		if (!regular.isEmpty()) {
+			BucketList[] lists = new BucketList[regular.size()];
+			for (int i = 0; i < lists.length; i++) {
+				lists[i] = bucketLists[regular.get(i)];
+			}
+			BucketList.fill(lists, input, classAttr, classes, sample == null ? null : sample.copy(), hashes,
+					fillExec.createSubProgress(0.9 * regular.size() / n));
+			fit(lists, divisions, tolerance, threads, fitExec.createSubProgress(regular.size() / (double) n));
+			for (int i = 0; i < lists.length; i++) {
+				int f = regular.get(i);
+				models[positions[f]] = complete(lists[i], sampled, stability);
+				lists[i] = null;
+				bucketLists[f] = null;
+			}
+		}
 
-			// form division by merging subsequent buckets with the same
-			// dominant class
-			buckets.formDivisions();
+		// count the wide-table features in batches within the memory budget,
+		// one pass over the input table per batch, and create the buckets of
+		// a few features at a time from the counts
+		if (!wide.isEmpty()) {
+			BucketList[] lists = new BucketList[wide.size()];
+			for (int i = 0; i < lists.length; i++) {
+				lists[i] = bucketLists[wide.get(i)];
+				lists[i].initGrid();
+			}
 
-			// merge divisions until number of division is smaller or equal than
-			// the user-defined maximal number
-			while (buckets.size() > m_divisions.getIntValue()) {
-				buckets.mergeDivisions();
+			// the counts are batched for the number of classes, so complete
+			// the class dictionary with a pass over the class column if the
+			// domain has no possible values (the sample pass already did)
+			double passShare = 0.9 * wide.size() / n;
+			if (sample == null && !inSpec.getColumnSpec(classAttr).getDomain().hasValues()) {
+				classes.count(input, classAttr, fillExec.createSubProgress(0.1 * passShare));
+				passShare *= 0.9;
 			}
+			long maxBytes = m_memoryBudget.getIntValue() * (1L << 20);
+
+			// the content is hashed by the first pass over the table that
+			// reads all rows, unless the regular features were filled before
+			ContentHash wideHashes = regular.isEmpty() ? hashes : null;
+
+			// with several batches, extract the features once into primitive
+			// columns, so that the batches do not decode the table again
+			ColumnStore store = null;
+			if (CountTensor.batches(lists, classes.size(), maxBytes).size() > 1) {
+				String[] wideFeatures = new String[lists.length];
+				for (int i = 0; i < lists.length; i++) {
+					wideFeatures[i] = lists[i].getFeature();
+				}
+				store = ColumnStore.extract(input, wideFeatures, classAttr, classes,
+						m_columnBudget.getIntValue() * (1L << 20), wideHashes, fillExec.createSubProgress(passShare / 2));
+				if (store != null)
+					passShare /= 2;
+			}
+			try {
+				fitWide(lists, maxBytes, store, input, classAttr, classes, sample, store == null ? wideHashes : null,
+						divisions, tolerance, threads, fillExec.createSubProgress(passShare),
+						fitExec.createSubProgress(wide.size() / (double) n), (i, model) -> {
+							int f = wide.get(i);
+							models[positions[f]] = complete(model, sampled, stability);
+							bucketLists[f] = null;
+						});
+			} finally {
+				if (store != null)
+					store.close();
+			}
+		}
+		if (stability[1] > 0)
+			setWarningMessage("Fitted on a sample of " + sample.size() + " rows: " + stability[1] + " of "
+					+ stability[0] + " divisions have no significant dominant class (overlapping 95% intervals)");
+	}
+
+	/**
+	 * @return accuracy tolerance for the automatic selection of the number of
+	 *         divisions, negative to always use the maximal number
+	 */
+	private double getTolerance() {
+		return m_autoDivisions.getBooleanValue() ? m_tolerance.getDoubleValue() : -1;
+	}
+
+	/**
+	 * Count the wide-table features in batches and fit them, creating the
+	 * buckets of a few features at a time from the counts. The features are
+	 * batched for the number of classes of the dictionary. If a batch finds a
+	 * class beyond it, the dictionary is completed with a pass over the class
+	 * column and the remaining features are batched again.
+	 * 
+	 * @param lists
+	 *            bucket lists with the grid of their initial buckets
+	 * @param maxBytes
+	 *            memory budget of the counts of a batch
+	 * @param store
+	 *            the extracted columns of the lists, null to read the input
+	 *            table for each batch
+	 * @param input
+	 * @param classAttr
+	 * @param classes
+	 * @param sample
+	 *            the rows to count, null to count all rows
+	 * @param hashes
+	 *            receives every row of the first batch read from the input
+	 *            table, null if no content hash is taken
+	 * @param divisions
+	 * @param tolerance
+	 * @param threads
+	 * @param fillExec
+	 * @param fitExec
+	 * @param fitted
+	 *            receives the position and the fitted bucket list of each
+	 *            feature
+	 * @throws Exception
+	 */
+	private static void fitWide(BucketList[] lists, long maxBytes, ColumnStore store, BufferedDataTable input,
+			String classAttr, ClassDictionary classes, RowSample sample, ContentHash hashes, int divisions,
+			double tolerance, int threads, ExecutionMonitor fillExec, ExecutionMonitor fitExec,
+			BiConsumer<Integer, BucketList> fitted)
+			throws Exception {
+		int chunk = 4 * threads;
+		ForkJoinPool pool = createPool(Math.min(threads, lists.length));
+		try {
+			fitWide(lists, maxBytes, store, input, classAttr, classes, sample, hashes, divisions, tolerance, chunk,
+					pool, fillExec, fitExec, fitted);
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Count the wide-table features in batches and fit them in chunks on a
+	 * shared pool, see
+	 * {@link #fitWide(BucketList[], long, ColumnStore, BufferedDataTable, String, ClassDictionary, RowSample, ContentHash, int, double, int, ExecutionMonitor, ExecutionMonitor, BiConsumer)}
+	 * 
+	 * @param lists
+	 * @param maxBytes
+	 * @param store
+	 * @param input
+	 * @param classAttr
+	 * @param classes
+	 * @param sample
+	 * @param hashes
+	 * @param divisions
+	 * @param tolerance
+	 * @param chunk
+	 *            number of features whose buckets are created and fitted at
+	 *            a time
+	 * @param pool
+	 *            the pool fitting the features, null for serial processing
+	 * @param fillExec
+	 * @param fitExec
+	 * @param fitted
+	 * @throws Exception
+	 */
+	private static void fitWide(BucketList[] lists, long maxBytes, ColumnStore store, BufferedDataTable input,
+			String classAttr, ClassDictionary classes, RowSample sample, ContentHash hashes, int divisions,
+			double tolerance, int chunk, ForkJoinPool pool, ExecutionMonitor fillExec, ExecutionMonitor fitExec,
+			BiConsumer<Integer, BucketList> fitted) throws Exception {
+		int first = 0;
+		while (first < lists.length) {
+			int numClasses = classes.size();
+			List<int[]> batches = CountTensor.batches(Arrays.copyOfRange(lists, first, lists.length), numClasses,
+					maxBytes);
+			LOGGER.debug("Counting " + (lists.length - first) + " features in " + batches.size() + " batches");
+			for (int[] batch : batches) {
+				BucketList[] batchLists = new BucketList[batch.length];
+				for (int i = 0; i < batch.length; i++) {
+					batch[i] += first;
+					batchLists[i] = lists[batch[i]];
+				}
+				ExecutionMonitor batchExec = fillExec.createSubProgress(batch.length / (double) lists.length);
+				RowSample batchSample = sample == null ? null : sample.copy();
+				CountTensor tensor = store == null
+						? CountTensor.fill(batchLists, input, classAttr, classes, batchSample, hashes, numClasses,
+								batchExec)
+						: CountTensor.fill(batchLists, store, batch, batchSample, numClasses, batchExec);
+				hashes = null;
+				if (tensor == null) {
+
+					// a class beyond the batched number of classes
+					if (store == null)
+						classes.count(input, classAttr, fillExec.createSubProgress(0));
+					LOGGER.debug("Found " + classes.size() + " instead of " + numClasses + " classes");
+					break;
+				}
+				for (int from = 0; from < batch.length; from += chunk) {
+					BucketList[] chunkLists = Arrays.copyOfRange(batchLists, from, Math.min(from + chunk, batch.length));
+					for (int i = 0; i < chunkLists.length; i++) {
+						chunkLists[i].fillFrom(tensor, from + i);
+					}
+					fit(chunkLists, divisions, tolerance, pool,
+							fitExec.createSubProgress(chunkLists.length / (double) lists.length));
+					for (int i = 0; i < chunkLists.length; i++) {
+						fitted.accept(batch[from + i], chunkLists[i]);
 
-			// create cell factory
-			cellFactory = new LucsKddDnCellFactory(createOutputColumnSpec(feature), buckets);
+						// the frozen model replaces the bucket list
+						chunkLists[i] = null;
+						batchLists[from + i] = null;
+						lists[batch[from + i]] = null;
+					}
+				}
+				first = batch[batch.length - 1] + 1;
+			}
+		}
+	}
 
-			// replace column
-			outputTable.replace(cellFactory, feature);
+	/**
+	 * Freeze the fitted buckets of a feature and log the divisions
+	 * 
+	 * @param buckets
+	 *            the fitted bucket list
+	 * @param sampled
+	 *            the buckets were filled with a sample of the rows
+	 * @param stability
+	 *            number of divisions and number of divisions whose dominant
+	 *            class is not significantly more frequent than the other
+	 *            classes, updated for a sampled fit
+	 * @return the frozen model
+	 */
+	private static FrozenBucketList complete(BucketList buckets, boolean sampled, int[] stability) {
+		String feature = buckets.getFeature();
 
-			int i = 0;
-			LOGGER.debug(feature + ":");
-			LOGGER.debugWithFormat("%8s%20s%20s\n", "Category", "Class", "Range");
+		// for a sampled fit, count the divisions whose dominant class is not
+		// significantly more frequent than the other classes
+		if (sampled) {
+			int unstable = 0;
 			for (Bucket b : buckets.getBuckets()) {
-				LOGGER.debugWithFormat("%8s%20s%20s\n", i, b.getDominantClass(), b.getRange().toString());
-				i++;
+				if (!b.isDominantClassStable(Z_95))
+					unstable++;
 			}
-			LOGGER.debug("------------------------------------------------");
+			if (unstable > 0)
+				LOGGER.info(
+						feature + ": " + unstable + " of " + buckets.size() + " divisions without significant dominant class");
+			stability[0] += buckets.size();
+			stability[1] += unstable;
 		}
 
-		// create the output table
-		BufferedDataTable bufferedOutput = exec.createColumnRearrangeTable(input, outputTable, exec);
+		// freeze the fitted buckets
+		FrozenBucketList model = buckets.freeze();
+
+		int i = 0;
+		LOGGER.debug(feature + ":");
+		LOGGER.debugWithFormat("%8s%20s%20s%20s\n", "Category", "Class", "Range", "Class share (95%)");
+		for (Bucket b : buckets.getBuckets()) {
+			double[] share = Bucket.wilsonInterval(
+					b.getDominantClassIndex() < 0 ? 0 : b.getClassFreq(b.getDominantClassIndex()), b.getSize(), Z_95);
+			LOGGER.debugWithFormat("%8s%20s%20s%20s\n", i, b.getDominantClass(), b.getRange().toString(),
+					String.format("[%.3f, %.3f]", share[0], share[1]));
+			i++;
+		}
+		LOGGER.debug("------------------------------------------------");
+		return model;
+	}
+
+	/**
+	 * @param initialBuckets
+	 *            value of the initial buckets setting
+	 * @return the grid of the initial buckets
+	 */
+	static BucketList.Grid getGrid(String initialBuckets) {
+		if (EQUAL_FREQUENCY.equals(initialBuckets))
+			return BucketList.Grid.EQUAL_FREQUENCY;
+		if (DISTINCT_VALUES.equals(initialBuckets))
+			return BucketList.Grid.DISTINCT_VALUES;
+		return BucketList.Grid.EQUAL_WIDTH;
+	}
+
+	/**
+	 * Parse the resolutions of single features of the form
+	 * <code>feature=N</code>, separated by commas, semicolons or line breaks
+	 * 
+	 * @param resolutions
+	 * @return the largest number of initial buckets of each feature with its
+	 *         own resolution
+	 * @throws InvalidSettingsException
+	 */
+	static Map<String, Integer> parseResolutions(String resolutions) throws InvalidSettingsException {
+		Map<String, Integer> result = new HashMap<>();
+		for (String entry : resolutions.split("[,;\\n]")) {
+			entry = entry.trim();
+			if (entry.isEmpty())
+				continue;
+			int eq = entry.lastIndexOf('=');
+			if (eq <= 0)
+				throw new InvalidSettingsException("Invalid resolution (expected feature=N): " + entry);
+			try {
+				int n = Integer.parseInt(entry.substring(eq + 1).trim());
+				if (n < 1)
+					throw new InvalidSettingsException("Resolution must be at least 1: " + entry);
+				result.put(entry.substring(0, eq).trim(), n);
+			} catch (NumberFormatException e) {
+				throw new InvalidSettingsException("Invalid resolution (expected feature=N): " + entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The class values of the model are those of the domain of the class
+	 * column, followed by the values the models found beyond the domain
+	 * 
+	 * @param inSpec
+	 * @param models
+	 * @return the model port object for the fitted models
+	 */
+	private LucsKddDnModelPortObject createModel(DataTableSpec inSpec, FrozenBucketList[] models) {
+		ClassDictionary classes = ClassDictionary.fromDomain(inSpec.getColumnSpec(m_class.getStringValue()));
+		for (FrozenBucketList model : models) {
+			ClassDictionary modelClasses = model.getClassDictionary();
+			for (int c = 0; modelClasses != null && c < modelClasses.size(); c++) {
+				classes.indexOf(modelClasses.get(c));
+			}
+			for (DataCell dominantClass : model.getDominantClasses()) {
+				if (dominantClass != null)
+					classes.indexOf(dominantClass);
+			}
+		}
+		return new LucsKddDnModelPortObject(new LucsKddDnModelPortObjectSpec(m_class.getStringValue(),
+				getFeatures(models), isCodes(), m_divisions.getIntValue()), classes, models);
+	}
+
+	/**
+	 * @return true if the binned columns contain integer codes
+	 */
+	private boolean isCodes() {
+		return CODES.equals(m_output.getStringValue());
+	}
+
+	/**
+	 * @param models
+	 * @return the feature of each model
+	 */
+	private static String[] getFeatures(FrozenBucketList[] models) {
+		String[] features = new String[models.length];
+		for (int f = 0; f < models.length; f++) {
+			features[f] = models[f].getFeature();
+		}
+		return features;
+	}
+
+	/**
+	 * Create the column re-arranger replacing the features by their binned
+	 * columns
+	 * 
+	 * @param inSpec
+	 * @param features
+	 * @param models
+	 *            fitted model of each feature, null if only the output spec is
+	 *            needed
+	 * @param codes
+	 *            true to output integer codes instead of interval labels
+	 * @param divisions
+	 *            maximal number of categories of each feature, -1 if not
+	 *            known
+	 * @return the column re-arranger
+	 */
+	static ColumnRearranger createColumnRearranger(DataTableSpec inSpec, String[] features,
+			FrozenBucketList[] models, boolean codes, int divisions) {
+		return createColumnRearranger(inSpec, features, models, codes, divisions, null, null);
+	}
+
+	/**
+	 * Create the column re-arranger replacing the features by their binned
+	 * columns and writing the items of the binned rows to a transaction file
+	 * 
+	 * @param inSpec
+	 * @param features
+	 * @param models
+	 *            fitted model of each feature, null if only the output spec is
+	 *            needed
+	 * @param codes
+	 *            true to output integer codes instead of interval labels
+	 * @param divisions
+	 *            maximal number of categories of each feature, -1 if not
+	 *            known
+	 * @param writer
+	 *            writer of the transaction file, null if no transaction file is
+	 *            written
+	 * @param classAttr
+	 *            class column whose values are written as class items, ignored
+	 *            if not contained in the table
+	 * @return the column re-arranger
+	 */
+	static ColumnRearranger createColumnRearranger(DataTableSpec inSpec, String[] features,
+			FrozenBucketList[] models, boolean codes, int divisions, TransactionWriter writer, String classAttr) {
+		DataColumnSpec[] colSpecs = new DataColumnSpec[features.length];
+		int[] colIndices = new int[features.length];
+		for (int f = 0; f < features.length; f++) {
+			colSpecs[f] = createOutputColumnSpec(features[f], codes, divisions);
+			colIndices[f] = inSpec.findColumnIndex(features[f]);
+		}
+
+		// replace the columns of all features using a single cell factory
+		ColumnRearranger outputTable = new ColumnRearranger(inSpec);
+		if (features.length > 0)
+			outputTable.replace(new LucsKddDnCellFactory(colSpecs, models, colIndices, codes, writer,
+					classAttr == null ? -1 : inSpec.findColumnIndex(classAttr)), colIndices);
+		return outputTable;
+	}
+
+	/**
+	 * Run the pipeline of dominant class determination, division forming and
+	 * division merging for each of the filled bucket lists. The bucket lists
+	 * are independent of each other, so with more than one thread they are
+	 * processed concurrently on a fork-join pool. The result is identical to
+	 * the serial processing.
+	 * 
+	 * @param bucketLists
+	 * @param divisions
+	 *            maximal number of divisions
+	 * @param tolerance
+	 *            accuracy tolerance for the automatic selection of the number
+	 *            of divisions, negative to always use the maximal number
+	 * @param threads
+	 *            number of threads
+	 * @param exec
+	 * @throws Exception
+	 */
+	static void fit(BucketList[] bucketLists, int divisions, double tolerance, int threads,
+			ExecutionMonitor exec)
+			throws Exception {
+		ForkJoinPool pool = createPool(Math.min(threads, bucketLists.length));
+		try {
+			fit(bucketLists, divisions, tolerance, pool, exec);
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param threads
+	 *            number of threads
+	 * @return a fork-join pool with the number of threads, null for serial
+	 *         processing with at most one thread. The caller shuts the pool
+	 *         down.
+	 */
+	static ForkJoinPool createPool(int threads) {
+		return threads > 1 ? new ForkJoinPool(threads) : null;
+	}
 
-		return new BufferedDataTable[] { bufferedOutput };
+	/**
+	 * Run the pipeline of dominant class determination, division forming and
+	 * division merging for each of the filled bucket lists on a given pool,
+	 * so that repeated fits (e.g. of the chunks of a wide table or the folds
+	 * of a cross-validation) share the threads of one pool
+	 * 
+	 * @param bucketLists
+	 * @param divisions
+	 *            maximal number of divisions
+	 * @param tolerance
+	 *            accuracy tolerance for the automatic selection of the number
+	 *            of divisions, negative to always use the maximal number
+	 * @param pool
+	 *            the pool processing the bucket lists, null for serial
+	 *            processing
+	 * @param exec
+	 * @throws Exception
+	 */
+	static void fit(BucketList[] bucketLists, int divisions, double tolerance, ForkJoinPool pool,
+			ExecutionMonitor exec) throws Exception {
+
+		// serial processing
+		if (pool == null || bucketLists.length <= 1) {
+			for (BucketList buckets : bucketLists) {
+				exec.checkCanceled();
+				fit(buckets, divisions, tolerance);
+			}
+			return;
+		}
 
+		// parallel processing
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(bucketLists.length);
+		try {
+			for (BucketList buckets : bucketLists) {
+				tasks.add(pool.submit(() -> fit(buckets, divisions, tolerance)));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				while (!task.isDone()) {
+					exec.checkCanceled();
+					try {
+						task.get(100, TimeUnit.MILLISECONDS);
+					} catch (TimeoutException e) {
+						// check for cancellation and wait again
+					}
+				}
+				task.get();
+			}
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		} finally {
+
+			// the pool outlives this fit, so stop the remaining tasks of a
+			// canceled or failed fit
+			for (ForkJoinTask<?> task : tasks) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Merge the buckets of a single feature into at most the given number of
+	 * divisions.
+	 * 
+	 * @param buckets
+	 * @param divisions
+	 * @param tolerance
+	 */
+	private static void fit(BucketList buckets, int divisions, double tolerance) {
+
+		// for each bucket determine the dominant class
+		// for buckets without dominant class, the dominant class is imputed
+		// from the nearest buckets
+		buckets.determineDominantClasses();
+
+		// form division by merging subsequent buckets with the same
+		// dominant class
+		buckets.formDivisions();
+
+		// record the merges down to a single division and select the number
+		// of divisions automatically if requested
+		MergeHierarchy hierarchy = buckets.buildHierarchy();
+		if (tolerance >= 0)
+			divisions = hierarchy.selectNumDivisions(divisions, tolerance);
+
+		// merge divisions until number of division is smaller or equal than
+		// the user-defined maximal number
+		buckets.mergeDivisions(divisions);
 	}
 
 	@Override
-	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
 
 		// check if user settings are available, fit to the incoming
 		// table structure, and the incoming types are feasible for the node
 		// to execute. If the node can execute in its current state return
 		// the spec of its output data table(s) (if you can, otherwise an array
 		// with null elements), or throw an exception with a useful user message
-		DataTableSpec inputSpec = inSpecs[0];
+		DataTableSpec inputSpec = (DataTableSpec) inSpecs[0];
 
 		// check if input table contains nominal class attribute
 		DataColumnSpec columnSpec = inputSpec.getColumnSpec(m_class.getStringValue());
 		if (columnSpec == null || !columnSpec.getType().isCompatible(NominalValue.class)) {
 			// if no useful column is selected guess one
 			// get the first useful one starting at the end of the table
+			columnSpec = null;
 			for (int i = inputSpec.getNumColumns() - 1; i >= 0; i--) {
 				if (inputSpec.getColumnSpec(i).getType().isCompatible(NominalValue.class)) {
-					m_class.setStringValue(inputSpec.getColumnSpec(i).getName());
+					columnSpec = inputSpec.getColumnSpec(i);
+					m_class.setStringValue(columnSpec.getName());
 					break;
 				}
-				throw new InvalidSettingsException("Table contains no nominal class attribute.");
 			}
+			if (columnSpec == null)
+				throw new InvalidSettingsException("Table contains no nominal class attribute.");
 		}
-		return new DataTableSpec[] { null };
+
+		parseResolutions(m_resolutionOverrides.getStringValue());
+
+		// the selected features are replaced by their binned columns
+		String[] features = m_features.applyTo(inputSpec).getIncludes();
+		return new PortObjectSpec[] {
+				createColumnRearranger(inputSpec, features, null, isCodes(), m_divisions.getIntValue()).createSpec(),
+				new LucsKddDnModelPortObjectSpec(m_class.getStringValue(), features, isCodes(),
+						m_divisions.getIntValue()) };
 	}
 
 	@Override
 	protected void saveSettingsTo(final NodeSettingsWO settings) {
 		m_divisions.saveSettingsTo(settings);
+		m_initialBuckets.saveSettingsTo(settings);
+		m_resolution.saveSettingsTo(settings);
+		m_resolutionOverrides.saveSettingsTo(settings);
+		m_sampling.saveSettingsTo(settings);
+		m_sampleSize.saveSettingsTo(settings);
+		m_wideTable.saveSettingsTo(settings);
+		m_memoryBudget.saveSettingsTo(settings);
+		m_columnBudget.saveSettingsTo(settings);
+		m_output.saveSettingsTo(settings);
+		m_autoDivisions.saveSettingsTo(settings);
+		m_tolerance.saveSettingsTo(settings);
+		m_threads.saveSettingsTo(settings);
+		m_cacheSize.saveSettingsTo(settings);
 		m_class.saveSettingsTo(settings);
 		m_features.saveSettingsTo(settings);
 
@@ -178,6 +1021,19 @@ public class LucsKddDnNodeModel extends NodeModel {
 	@Override
 	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
 		m_divisions.loadSettingsFrom(settings);
+		loadOptional(m_initialBuckets, CFG_INITIAL_BUCKETS, settings);
+		loadOptional(m_resolution, CFG_RESOLUTION, settings);
+		loadOptional(m_resolutionOverrides, CFG_RESOLUTION_OVERRIDES, settings);
+		loadOptional(m_sampling, CFG_SAMPLING, settings);
+		loadOptional(m_sampleSize, CFG_SAMPLE_SIZE, settings);
+		loadOptional(m_wideTable, CFG_WIDE_TABLE, settings);
+		loadOptional(m_memoryBudget, CFG_MEMORY_BUDGET, settings);
+		loadOptional(m_columnBudget, CFG_COLUMN_BUDGET, settings);
+		loadOptional(m_output, CFG_OUTPUT, settings);
+		loadOptional(m_autoDivisions, CFG_AUTO_DIVISIONS, settings);
+		loadOptional(m_tolerance, CFG_TOLERANCE, settings);
+		loadOptional(m_threads, CFG_THREADS, settings);
+		loadOptional(m_cacheSize, CFG_CACHE_SIZE, settings);
 		m_class.loadSettingsFrom(settings);
 		m_features.loadSettingsFrom(settings);
 	}
@@ -185,32 +1041,134 @@ public class LucsKddDnNodeModel extends NodeModel {
 	@Override
 	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
 		m_divisions.validateSettings(settings);
+		validateOptional(m_initialBuckets, CFG_INITIAL_BUCKETS, settings);
+		validateOptional(m_resolution, CFG_RESOLUTION, settings);
+		validateOptional(m_resolutionOverrides, CFG_RESOLUTION_OVERRIDES, settings);
+		validateOptional(m_sampling, CFG_SAMPLING, settings);
+		validateOptional(m_sampleSize, CFG_SAMPLE_SIZE, settings);
+		validateOptional(m_wideTable, CFG_WIDE_TABLE, settings);
+		validateOptional(m_memoryBudget, CFG_MEMORY_BUDGET, settings);
+		validateOptional(m_columnBudget, CFG_COLUMN_BUDGET, settings);
+		validateOptional(m_output, CFG_OUTPUT, settings);
+		validateOptional(m_autoDivisions, CFG_AUTO_DIVISIONS, settings);
+		validateOptional(m_tolerance, CFG_TOLERANCE, settings);
+		validateOptional(m_threads, CFG_THREADS, settings);
+		validateOptional(m_cacheSize, CFG_CACHE_SIZE, settings);
 		m_class.validateSettings(settings);
 		m_features.validateSettings(settings);
 	}
 
+	/**
+	 * Validate a setting added after the first version of the node. Workflows
+	 * saved before do not contain it, so it is only validated if present.
+	 * 
+	 * @param model
+	 * @param key
+	 *            the key of the setting
+	 * @param settings
+	 * @throws InvalidSettingsException
+	 */
+	static void validateOptional(SettingsModel model, String key, NodeSettingsRO settings)
+			throws InvalidSettingsException {
+		if (settings.containsKey(key))
+			model.validateSettings(settings);
+	}
+
+	/**
+	 * Load a setting added after the first version of the node. If a workflow
+	 * saved before does not contain it, the setting keeps its default.
+	 * 
+	 * @param model
+	 * @param key
+	 *            the key of the setting
+	 * @param settings
+	 * @throws InvalidSettingsException
+	 */
+	static void loadOptional(SettingsModel model, String key, NodeSettingsRO settings)
+			throws InvalidSettingsException {
+		if (settings.containsKey(key))
+			model.loadSettingsFrom(settings);
+	}
+
 	@Override
 	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
-		// Nothing to do.
+
+		// restore the fitted models and seed the cache with them, so that
+		// executing the reopened workflow again only fits changed features
+		if (!FrozenBucketListIO.exists(internDir))
+			return;
+		FrozenBucketListIO.Saved saved = FrozenBucketListIO.load(internDir);
+		m_models = saved.models;
+		m_hashes = saved.hashes;
+		m_keys = Arrays.asList(saved.keys);
+		m_cache.setMaxBytes(m_cacheSize.getIntValue() * (1L << 20));
+		for (int f = 0; f < m_models.length; f++) {
+			m_cache.put(saved.keys[f], m_hashes[f], m_models[f]);
+		}
 	}
 
 	@Override
 	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
 			throws IOException, CanceledExecutionException {
-		// Nothing to do.
+
+		// save the fitted models with their cache keys
+		if (m_models != null)
+			FrozenBucketListIO.save(internDir, m_models, m_keys.toArray(new String[0]), m_hashes);
 	}
 	
 	@Override
 	protected void reset() {
-		 // Nothing to do.
+		m_models = null;
+		m_hashes = null;
+
+		// the node is reset before every execution, so the models of the last
+		// execution stay cached: executing again after a change of the
+		// settings or the input only fits the changed features
+		m_cache.retain(m_keys);
 	}
 
+	@Override
+	protected void onDispose() {
+		m_cache.clear();
+		m_keys = new ArrayList<>();
+	}
 
-	private static DataColumnSpec createOutputColumnSpec(String feature) {
+
+	/**
+	 * Create the specification of the binned column of a feature. The domain
+	 * contains the categories (the interval labels or their codes) up to the
+	 * maximal number of divisions, so that downstream nodes need no pass over
+	 * the table to determine it. The specification depends only on the
+	 * settings, so it is the same at configure time and after execution, also
+	 * if fewer divisions are fitted.
+	 * 
+	 * @param feature
+	 * @param codes
+	 *            true for a column of integer codes instead of interval labels
+	 * @param divisions
+	 *            maximal number of categories, -1 if not known
+	 * @return the column specification
+	 */
+	static DataColumnSpec createOutputColumnSpec(String feature, boolean codes, int divisions) {
 
 		// creator for the discretized feature
-		DataColumnSpecCreator colSpecCreator = new DataColumnSpecCreator(feature, StringCell.TYPE);
+		DataColumnSpecCreator colSpecCreator = new DataColumnSpecCreator(feature,
+				codes ? IntCell.TYPE : StringCell.TYPE);
+
+		// the categories of at most the maximal number of divisions
+		if (divisions > 0) {
+			if (codes) {
+				colSpecCreator.setDomain(new DataColumnDomainCreator(new IntCell(0), new IntCell(divisions - 1))
+						.createDomain());
+			} else {
+				Set<DataCell> values = new LinkedHashSet<>();
+				for (int i = 0; i < divisions; i++) {
+					values.add(new StringCell("Interval_" + i));
+				}
+				colSpecCreator.setDomain(new DataColumnDomainCreator(values).createDomain());
+			}
+		}
 
 		// create the specification for the new column
 		DataColumnSpec newColumnSpec = colSpecCreator.createSpec();
@@ -0,0 +1,62 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.data.NominalValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter2;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+
+
+/**
+ * <code>NodeDialog</code> for the "LUCS-KDD Histogram Update" Node.
+ * The class column, the features and the grid bounds are only used if no
+ * histogram state is connected.
+ * 
+ * @author Tobias Witt
+ */
+public class LucsKddDnUpdateNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * New pane for configuring the LUCS-KDD Histogram Update node.
+     */
+	@SuppressWarnings({ "unchecked"})
+    protected LucsKddDnUpdateNodeDialog() {
+        super();
+        
+        // class attribute of the appended rows
+    	addDialogComponent(new DialogComponentColumnNameSelection(
+    			LucsKddDnNodeModel.createClassColModel(), 
+    			"Class Column",
+    			1, true, NominalValue.class));
+    	
+    	// desired number of divisions
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createNumDivisionsModel(), "Max. number of divisions:", 1));
+    	
+    	// select the number of divisions automatically
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnNodeModel.createAutoDivisionsModel(), "Select number of divisions automatically"));
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createToleranceModel(), "Accuracy tolerance:", 0.01));
+    	
+    	// number of threads used to fit the features
+    	addDialogComponent(new DialogComponentNumber(
+    			LucsKddDnNodeModel.createNumThreadsModel(), "Number of threads:", 1));
+    	
+    	// choose features of the appended rows
+    	addDialogComponent(new DialogComponentColumnFilter2(
+    		LucsKddDnNodeModel.createIncludedFeaturesModel(), 1));
+    	
+    	// fixed bounds of the grid of the initial buckets
+    	addDialogComponent(new DialogComponentString(
+    			LucsKddDnUpdateNodeModel.createGridBoundsModel(), 
+    			"Fixed grid bounds (feature=lower:upper, ...):", false, 40));
+    	
+    	// create a partial state to be combined
+    	addDialogComponent(new DialogComponentBoolean(
+    			LucsKddDnUpdateNodeModel.createPartialStateModel(),
+    			"Partial state to be combined (needs fixed grid bounds for all features)"));
+    }
+}
@@ -0,0 +1,43 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LUCS-KDD Histogram Update" Node.
+ * Updates a LUCS-KDD DN histogram state and fits the model from it
+ *
+ * @author Tobias Witt
+ */
+public class LucsKddDnUpdateNodeFactory 
+        extends NodeFactory<LucsKddDnUpdateNodeModel> {
+
+    @Override
+    public LucsKddDnUpdateNodeModel createNodeModel() {
+        return new LucsKddDnUpdateNodeModel();
+    }
+
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    @Override
+    public NodeView<LucsKddDnUpdateNodeModel> createNodeView(final int viewIndex,
+            final LucsKddDnUpdateNodeModel nodeModel) {
+        return null;
+    }
+
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new LucsKddDnUpdateNodeDialog();
+    }
+
+}
+
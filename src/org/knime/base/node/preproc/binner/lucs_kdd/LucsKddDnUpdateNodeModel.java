@@ -0,0 +1,347 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.NominalValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelColumnFilter2;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+/**
+ * This is the model implementation of the LUCS-KDD Histogram Update node. It
+ * keeps the class frequencies of the initial buckets of each feature as a
+ * histogram state, adds appended rows to and retracts removed rows from the
+ * counts, and fits the model from the updated counts. Only the appended and
+ * removed rows are read, the dominant class determination and the merging of
+ * the buckets are rerun on the counts.
+ * 
+ * Without an incoming state, the grid of the initial buckets is defined by the
+ * domain of the appended rows and stays fixed for all later updates; values
+ * outside the grid are counted in the first or last bucket. A partial state
+ * to be combined with the states of other partitions needs fixed grid bounds
+ * for all features.
+ *
+ * @author Tobias Witt, University of Konstanz
+ */
+public class LucsKddDnUpdateNodeModel extends NodeModel {
+
+	// the logger instance
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(LucsKddDnUpdateNodeModel.class);
+
+	// class attribute (if no state is given)
+	private final SettingsModelString m_class = LucsKddDnNodeModel.createClassColModel();
+
+	// desired number of divisions
+	private final SettingsModelIntegerBounded m_divisions = LucsKddDnNodeModel.createNumDivisionsModel();
+
+	// select the number of divisions automatically
+	private final SettingsModelBoolean m_autoDivisions = LucsKddDnNodeModel.createAutoDivisionsModel();
+
+	// tolerated loss of accuracy for the automatic selection of divisions
+	private final SettingsModelDoubleBounded m_tolerance = LucsKddDnNodeModel.createToleranceModel();
+
+	// number of threads used to fit the features
+	private final SettingsModelIntegerBounded m_threads = LucsKddDnNodeModel.createNumThreadsModel();
+
+	// select variables (if no state is given)
+	private final SettingsModelColumnFilter2 m_features = LucsKddDnNodeModel.createIncludedFeaturesModel();
+
+	// fixed bounds of the grid of the initial buckets (if no state is given)
+	static final String CFG_GRID_BOUNDS = "Grid bounds";
+	private final SettingsModelString m_gridBounds = createGridBoundsModel();
+
+	protected static SettingsModelString createGridBoundsModel() {
+		return new SettingsModelString(CFG_GRID_BOUNDS, "");
+	}
+
+	// create a partial state to be combined, which needs fixed grid bounds
+	// for all features (if no state is given)
+	static final String CFG_PARTIAL_STATE = "Partial state";
+	private final SettingsModelBoolean m_partialState = createPartialStateModel();
+
+	protected static SettingsModelBoolean createPartialStateModel() {
+		return new SettingsModelBoolean(CFG_PARTIAL_STATE, false);
+	}
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected LucsKddDnUpdateNodeModel() {
+		super(new PortType[] { LucsKddDnHistogramPortObject.TYPE_OPTIONAL, BufferedDataTable.TYPE_OPTIONAL,
+				BufferedDataTable.TYPE_OPTIONAL },
+				new PortType[] { LucsKddDnHistogramPortObject.TYPE, LucsKddDnModelPortObject.TYPE });
+	}
+
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+		LucsKddDnHistogramPortObject state = (LucsKddDnHistogramPortObject) inData[0];
+		BufferedDataTable appended = (BufferedDataTable) inData[1];
+		BufferedDataTable removed = (BufferedDataTable) inData[2];
+
+		// update a copy of the incoming state with the appended rows, or
+		// create a new state from them
+		if (state == null) {
+			state = createState(appended, exec.createSubProgress(0.4));
+		} else {
+			state = state.copy();
+			if (appended != null) {
+				LOGGER.debug("Adding " + appended.size() + " rows to the histogram state");
+				BucketList.update(state.getHistograms(), appended, state.getSpec().getClassAttr(),
+						state.getClassDictionary(), 1, exec.createSubProgress(0.4));
+			}
+		}
+
+		// retract the removed rows
+		if (removed != null) {
+			LOGGER.debug("Retracting " + removed.size() + " rows from the histogram state");
+			BucketList.update(state.getHistograms(), removed, state.getSpec().getClassAttr(),
+					state.getClassDictionary(), -1, exec.createSubProgress(0.4));
+		}
+
+		// fit copies of the histograms, so that the state keeps the counts of
+		// the initial buckets
+		BucketList[] histograms = state.getHistograms();
+		BucketList[] bucketLists = new BucketList[histograms.length];
+		for (int f = 0; f < histograms.length; f++) {
+			bucketLists[f] = histograms[f].copy();
+		}
+		double tolerance = m_autoDivisions.getBooleanValue() ? m_tolerance.getDoubleValue() : -1;
+		LucsKddDnNodeModel.fit(bucketLists, m_divisions.getIntValue(), tolerance, m_threads.getIntValue(),
+				exec.createSubProgress(0.2));
+		FrozenBucketList[] models = new FrozenBucketList[bucketLists.length];
+		for (int f = 0; f < bucketLists.length; f++) {
+			models[f] = bucketLists[f].freeze();
+		}
+
+		LucsKddDnModelPortObjectSpec modelSpec = new LucsKddDnModelPortObjectSpec(state.getSpec().getClassAttr(),
+				state.getSpec().getFeatures(), false, m_divisions.getIntValue());
+		return new PortObject[] { state,
+				new LucsKddDnModelPortObject(modelSpec, state.getClassDictionary(), models) };
+	}
+
+	/**
+	 * Create the histogram state of the selected features from the rows of a
+	 * table
+	 * 
+	 * @param input
+	 * @param exec
+	 * @return the histogram state
+	 * @throws InvalidSettingsException
+	 * @throws CanceledExecutionException
+	 */
+	private LucsKddDnHistogramPortObject createState(BufferedDataTable input, ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+		DataTableSpec inSpec = input.getDataTableSpec();
+		String classAttr = m_class.getStringValue();
+		String[] features = m_features.applyTo(inSpec).getIncludes();
+		Map<String, double[]> gridBounds = parseGridBounds(m_gridBounds.getStringValue());
+		if (m_partialState.getBooleanValue())
+			checkSharedGrid(features, gridBounds);
+		ClassDictionary classes = ClassDictionary.fromDomain(inSpec.getColumnSpec(classAttr));
+		BucketList[] histograms = new BucketList[features.length];
+		for (int f = 0; f < features.length; f++) {
+			histograms[f] = new BucketList(features[f], classAttr, input, classes);
+			double[] bounds = gridBounds.get(features[f]);
+			if (bounds != null)
+				histograms[f].setGridBounds(bounds[0], bounds[1]);
+		}
+		BucketList.fill(histograms, input, classAttr, classes, exec);
+		return new LucsKddDnHistogramPortObject(
+				new LucsKddDnHistogramPortObjectSpec(classAttr, features, m_partialState.getBooleanValue()), classes,
+				histograms);
+	}
+
+	/**
+	 * Check that the grids of all features of a partial state are fixed by
+	 * shared bounds. Otherwise the grids would be taken from the domain or the
+	 * values of each partition, and the counts of the partitions could not be
+	 * combined.
+	 * 
+	 * @param features
+	 * @param gridBounds
+	 *            the fixed grid bounds
+	 * @throws InvalidSettingsException
+	 *             if a feature has no fixed grid bounds
+	 */
+	static void checkSharedGrid(String[] features, Map<String, double[]> gridBounds)
+			throws InvalidSettingsException {
+		List<String> missing = new ArrayList<>();
+		for (String feature : features) {
+			if (!gridBounds.containsKey(feature))
+				missing.add(feature);
+		}
+		if (!missing.isEmpty())
+			throw new InvalidSettingsException(
+					"A partial state to be combined needs fixed grid bounds for all features, missing for: "
+							+ String.join(", ", missing));
+	}
+
+	/**
+	 * Parse the fixed grid bounds of the form
+	 * <code>feature=lower:upper</code>, separated by commas, semicolons or
+	 * line breaks
+	 * 
+	 * @param gridBounds
+	 * @return the lower and upper bound of each feature with fixed bounds
+	 * @throws InvalidSettingsException
+	 */
+	static Map<String, double[]> parseGridBounds(String gridBounds) throws InvalidSettingsException {
+		Map<String, double[]> bounds = new HashMap<>();
+		for (String entry : gridBounds.split("[,;\\n]")) {
+			entry = entry.trim();
+			if (entry.isEmpty())
+				continue;
+			int eq = entry.lastIndexOf('=');
+			int colon = entry.indexOf(':', eq + 1);
+			if (eq <= 0 || colon < 0)
+				throw new InvalidSettingsException("Invalid grid bounds (expected feature=lower:upper): " + entry);
+			try {
+				double low = Double.parseDouble(entry.substring(eq + 1, colon).trim());
+				double upp = Double.parseDouble(entry.substring(colon + 1).trim());
+				if (!(low <= upp))
+					throw new InvalidSettingsException("Lower grid bound is larger than upper bound: " + entry);
+				bounds.put(entry.substring(0, eq).trim(), new double[] { low, upp });
+			} catch (NumberFormatException e) {
+				throw new InvalidSettingsException("Invalid grid bounds (expected feature=lower:upper): " + entry);
+			}
+		}
+		return bounds;
+	}
+
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		LucsKddDnHistogramPortObjectSpec stateSpec = (LucsKddDnHistogramPortObjectSpec) inSpecs[0];
+		DataTableSpec appendedSpec = (DataTableSpec) inSpecs[1];
+		DataTableSpec removedSpec = (DataTableSpec) inSpecs[2];
+
+		// without a state, the class attribute and features are taken from the
+		// settings
+		if (stateSpec == null) {
+			if (appendedSpec == null)
+				throw new InvalidSettingsException("Connect a histogram state or the rows to add.");
+			parseGridBounds(m_gridBounds.getStringValue());
+			DataColumnSpec columnSpec = appendedSpec.getColumnSpec(m_class.getStringValue());
+			if (columnSpec == null || !columnSpec.getType().isCompatible(NominalValue.class)) {
+				// if no useful column is selected guess one
+				// get the first useful one starting at the end of the table
+				columnSpec = null;
+				for (int i = appendedSpec.getNumColumns() - 1; i >= 0; i--) {
+					if (appendedSpec.getColumnSpec(i).getType().isCompatible(NominalValue.class)) {
+						columnSpec = appendedSpec.getColumnSpec(i);
+						m_class.setStringValue(columnSpec.getName());
+						break;
+					}
+				}
+				if (columnSpec == null)
+					throw new InvalidSettingsException("Table contains no nominal class attribute.");
+			}
+			String[] features = m_features.applyTo(appendedSpec).getIncludes();
+			if (m_partialState.getBooleanValue())
+				checkSharedGrid(features, parseGridBounds(m_gridBounds.getStringValue()));
+			stateSpec = new LucsKddDnHistogramPortObjectSpec(m_class.getStringValue(), features,
+					m_partialState.getBooleanValue());
+		}
+
+		// the appended and removed rows must contain the class attribute and
+		// features of the state
+		if (appendedSpec != null)
+			checkColumns(appendedSpec, stateSpec);
+		if (removedSpec != null)
+			checkColumns(removedSpec, stateSpec);
+
+		return new PortObjectSpec[] { stateSpec,
+				new LucsKddDnModelPortObjectSpec(stateSpec.getClassAttr(), stateSpec.getFeatures(), false,
+						m_divisions.getIntValue()) };
+	}
+
+	/**
+	 * Check that the table contains the class attribute and the features of
+	 * the histogram state
+	 * 
+	 * @param inSpec
+	 * @param stateSpec
+	 * @throws InvalidSettingsException
+	 */
+	private static void checkColumns(DataTableSpec inSpec, LucsKddDnHistogramPortObjectSpec stateSpec)
+			throws InvalidSettingsException {
+		DataColumnSpec columnSpec = inSpec.getColumnSpec(stateSpec.getClassAttr());
+		if (columnSpec == null || !columnSpec.getType().isCompatible(NominalValue.class))
+			throw new InvalidSettingsException(
+					"Input table does not contain nominal class attribute: " + stateSpec.getClassAttr());
+		LucsKddDnApplyNodeModel.checkFeatures(inSpec, stateSpec.getFeatures());
+	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		m_divisions.saveSettingsTo(settings);
+		m_autoDivisions.saveSettingsTo(settings);
+		m_tolerance.saveSettingsTo(settings);
+		m_threads.saveSettingsTo(settings);
+		m_class.saveSettingsTo(settings);
+		m_features.saveSettingsTo(settings);
+		m_gridBounds.saveSettingsTo(settings);
+		m_partialState.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_divisions.loadSettingsFrom(settings);
+		m_autoDivisions.loadSettingsFrom(settings);
+		m_tolerance.loadSettingsFrom(settings);
+		m_threads.loadSettingsFrom(settings);
+		m_class.loadSettingsFrom(settings);
+		m_features.loadSettingsFrom(settings);
+		LucsKddDnNodeModel.loadOptional(m_gridBounds, CFG_GRID_BOUNDS, settings);
+		LucsKddDnNodeModel.loadOptional(m_partialState, CFG_PARTIAL_STATE, settings);
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_divisions.validateSettings(settings);
+		m_autoDivisions.validateSettings(settings);
+		m_tolerance.validateSettings(settings);
+		m_threads.validateSettings(settings);
+		m_class.validateSettings(settings);
+		m_features.validateSettings(settings);
+		LucsKddDnNodeModel.validateOptional(m_gridBounds, CFG_GRID_BOUNDS, settings);
+		LucsKddDnNodeModel.validateOptional(m_partialState, CFG_PARTIAL_STATE, settings);
+	}
+
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		// Nothing to do.
+	}
+
+	@Override
+	protected void reset() {
+		// Nothing to do.
+	}
+}
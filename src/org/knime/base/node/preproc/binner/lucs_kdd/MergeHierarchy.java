@@ -0,0 +1,156 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The complete sequence of merges from the initial divisions (see
+ * {@link BucketList#formDivisions()}) down to a single division. Since the
+ * merge that is selected in each step does not depend on the desired number
+ * of divisions, the divisions for any maximal number of divisions can be
+ * extracted from the hierarchy without merging again.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+public class MergeHierarchy {
+
+	// the initial divisions
+	private final Bucket[] divisions;
+
+	// positions of the divisions in the order in which they were merged into
+	// their previous division
+	private final int[] removedOrder;
+
+	// number of divisions, number of merged divisions and number of correctly
+	// classified instances after each merge step
+	private final int[] sizes;
+	private final int[] removedCounts;
+	private final long[] correct;
+
+	// number of correctly classified instances for the initial divisions
+	private final long initialCorrect;
+
+	/**
+	 * Record the merges of the given divisions. The divisions themselves are
+	 * not modified.
+	 * 
+	 * @param divisions
+	 *            the initial divisions
+	 */
+	public MergeHierarchy(List<Bucket> divisions) {
+		int n = divisions.size();
+		this.divisions = divisions.toArray(new Bucket[n]);
+
+		// merge copies of the divisions down to a single division
+		List<Bucket> copies = new ArrayList<>(n);
+		for (Bucket division : this.divisions) {
+			copies.add(division.copy());
+		}
+		DivisionMerger merger = new DivisionMerger(copies);
+		this.initialCorrect = merger.getCorrect();
+		int steps = 0;
+		int[] sizes = new int[n];
+		int[] removedCounts = new int[n];
+		long[] correct = new long[n];
+		while (merger.size() > 1) {
+			merger.mergeBest();
+			sizes[steps] = merger.size();
+			removedCounts[steps] = merger.getRemovedCount();
+			correct[steps] = merger.getCorrect();
+			steps++;
+		}
+		this.removedOrder = merger.getRemovedOrder();
+		this.sizes = Arrays.copyOf(sizes, steps);
+		this.removedCounts = Arrays.copyOf(removedCounts, steps);
+		this.correct = Arrays.copyOf(correct, steps);
+	}
+
+	/**
+	 * @param maxDivisions
+	 * @return the divisions after merging until the number of divisions is
+	 *         smaller or equal than the given number
+	 */
+	public ArrayList<Bucket> cut(int maxDivisions) {
+
+		// mark the divisions merged up to the first step reaching the number
+		int step = this.findStep(maxDivisions);
+		boolean[] removed = new boolean[this.divisions.length];
+		for (int i = 0; step >= 0 && i < this.removedCounts[step]; i++) {
+			removed[this.removedOrder[i]] = true;
+		}
+
+		// each remaining division absorbs the merged divisions following it
+		// and keeps its dominant class
+		ArrayList<Bucket> result = new ArrayList<>();
+		for (int i = 0; i < this.divisions.length; i++) {
+			if (removed[i])
+				result.get(result.size() - 1).merge(this.divisions[i]);
+			else
+				result.add(this.divisions[i].copy());
+		}
+		return result;
+	}
+
+	/**
+	 * @param maxDivisions
+	 * @return the proportion of instances belonging to the most frequent class
+	 *         of their division after merging until the number of divisions is
+	 *         smaller or equal than the given number
+	 */
+	public double getAccuracy(int maxDivisions) {
+		int step = this.findStep(maxDivisions);
+		long total = 0;
+		for (Bucket division : this.divisions) {
+			total += division.getSize();
+		}
+		if (total == 0)
+			return 0;
+		return (step < 0 ? this.initialCorrect : this.correct[step]) / (double) total;
+	}
+
+	/**
+	 * Select the smallest number of divisions whose accuracy (see
+	 * {@link #getAccuracy(int)}) is at most the given tolerance below the
+	 * accuracy for the maximal number of divisions.
+	 * 
+	 * @param maxDivisions
+	 * @param tolerance
+	 * @return the selected number of divisions
+	 */
+	public int selectNumDivisions(int maxDivisions, double tolerance) {
+		double best = this.getAccuracy(maxDivisions);
+		int selected = Math.min(maxDivisions, this.divisions.length);
+		for (int step = this.sizes.length - 1; step >= 0 && this.sizes[step] <= maxDivisions; step--) {
+			if (this.getAccuracy(this.sizes[step]) >= best - tolerance) {
+				selected = this.sizes[step];
+				break;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the number of initial divisions
+	 */
+	public int size() {
+		return this.divisions.length;
+	}
+
+	/**
+	 * @param maxDivisions
+	 * @return the index of the first merge step after which the number of
+	 *         divisions is smaller or equal than the given number, -1 if no
+	 *         merge is needed
+	 */
+	private int findStep(int maxDivisions) {
+		if (this.divisions.length <= maxDivisions)
+			return -1;
+		int step = 0;
+		while (step < this.sizes.length - 1 && this.sizes[step] > maxDivisions) {
+			step++;
+		}
+		return step;
+	}
+}
@@ -0,0 +1,304 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * Streaming quantile sketch (KLL) of the values of a feature, used to create
+ * initial buckets of roughly equal frequency in the same pass over the input
+ * table. After the pass, the buckets are bounded by the estimated quantiles
+ * (see {@link #createBuckets(BucketList)}). The sketch is only used for the
+ * bounds: as long as no level was compacted, all values are retained with
+ * their class ordinals and replayed into the buckets (see
+ * {@link #replay(BucketList)}), otherwise the buckets are filled with the
+ * exact class frequencies by a second pass over the table.
+ * 
+ * The items are kept in a hierarchy of compactors. An item of level h
+ * represents 2^h values. When a level is full, it is sorted and every other
+ * item is promoted to the next level, starting at a random offset, so the
+ * total weight is preserved. The capacities decrease geometrically towards
+ * the lower levels, so the memory is bounded by about 3k items independently
+ * of the number of rows, and the rank error of a quantile is about 1.7/k of
+ * the number of values.
+ * 
+ * NaN values are not part of the quantiles and are counted exactly.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class QuantileSketch implements ValueSketch {
+
+	// capacity of the highest level
+	static final int K = 2048;
+
+	// ratio of the capacities of neighboring levels
+	private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+	// values and class ordinals of the items of each level, the levels above
+	// 0 are sorted by value
+	private double[][] values;
+	private int[][] classes;
+	private int[] sizes;
+	private int numLevels;
+
+	// smallest and largest value
+	private double min;
+	private double max;
+
+	// class frequencies of the NaN values
+	private final ClassFrequencies nan;
+
+	// deterministic offsets, so that the result is reproducible
+	private final Random random;
+
+	/**
+	 * Constructor
+	 */
+	QuantileSketch() {
+		this.values = new double[1][];
+		this.classes = new int[1][];
+		this.values[0] = new double[K];
+		this.classes[0] = new int[K];
+		this.sizes = new int[1];
+		this.numLevels = 1;
+		this.min = Double.POSITIVE_INFINITY;
+		this.max = Double.NEGATIVE_INFINITY;
+		this.nan = ClassFrequencies.create(0);
+		this.random = new Random(0);
+	}
+
+	@Override
+	public void add(double x, int classIndex) {
+		if (Double.isNaN(x)) {
+			this.nan.add(classIndex, 1);
+			return;
+		}
+		this.min = Math.min(this.min, x);
+		this.max = Math.max(this.max, x);
+		this.append(0, x, classIndex);
+
+		// compact the full levels from the bottom up
+		for (int h = 0; h < this.numLevels; h++) {
+			if (this.sizes[h] >= this.capacity(h))
+				this.compact(h);
+		}
+	}
+
+	@Override
+	public void createBuckets(BucketList list) throws InvalidSettingsException {
+		if (this.min > this.max)
+			throw new InvalidSettingsException("No values for feature: " + list.getFeature());
+
+		// collect the weighted items sorted by value
+		int n = 0;
+		for (int h = 0; h < this.numLevels; h++) {
+			n += this.sizes[h];
+		}
+		double[] v = new double[n];
+		int[] c = new int[n];
+		long[] w = new long[n];
+		int j = 0;
+		long total = 0;
+		for (int h = 0; h < this.numLevels; h++) {
+			for (int i = 0; i < this.sizes[h]; i++, j++) {
+				v[j] = this.values[h][i];
+				c[j] = this.classes[h][i];
+				w[j] = 1L << h;
+				total += w[j];
+			}
+		}
+		sort(v, c, w, 0, n - 1);
+
+		// upper bounds at the quantiles i / N for the resolution N of the
+		// list, without duplicates and without the largest value (the last
+		// bucket is unbounded)
+		int numBuckets = list.getResolution();
+		double[] bounds = new double[numBuckets - 1];
+		int numBounds = 0;
+		long cumulative = 0;
+		j = 0;
+		for (int i = 1; i < numBuckets; i++) {
+			double rank = i * (double) total / numBuckets;
+			while (j < n - 1 && cumulative + w[j] < rank) {
+				cumulative += w[j++];
+			}
+			double bound = v[j];
+			if (bound < this.max && (numBounds == 0 || bound > bounds[numBounds - 1]))
+				bounds[numBounds++] = bound;
+		}
+		list.setUpperBounds(this.min, this.max, Arrays.copyOf(bounds, numBounds));
+	}
+
+	/**
+	 * @return true if no level was compacted, so every value is retained
+	 */
+	@Override
+	public boolean isExact() {
+		return this.numLevels == 1;
+	}
+
+	@Override
+	public void replay(BucketList list) {
+		for (int i = 0; i < this.sizes[0]; i++) {
+			list.add(this.values[0][i], this.classes[0][i], 1);
+		}
+		for (int slot = 0; slot < this.nan.slots(); slot++) {
+			int cl = this.nan.classAt(slot);
+			if (cl >= 0)
+				list.add(Double.NaN, cl, this.nan.countAt(slot));
+		}
+	}
+
+	/**
+	 * @param h
+	 * @return the capacity of the level
+	 */
+	private int capacity(int h) {
+		return Math.max(8, (int) Math.ceil(K * Math.pow(CAPACITY_RATIO, this.numLevels - 1 - h)));
+	}
+
+	/**
+	 * Append an item to a level
+	 * 
+	 * @param h
+	 * @param x
+	 * @param classIndex
+	 */
+	private void append(int h, double x, int classIndex) {
+		if (this.sizes[h] == this.values[h].length) {
+			this.values[h] = Arrays.copyOf(this.values[h], 2 * this.values[h].length);
+			this.classes[h] = Arrays.copyOf(this.classes[h], 2 * this.classes[h].length);
+		}
+		this.values[h][this.sizes[h]] = x;
+		this.classes[h][this.sizes[h]++] = classIndex;
+	}
+
+	/**
+	 * Promote every other item of a full level to the next level. With an odd
+	 * number of items, the largest item stays in the level.
+	 * 
+	 * @param h
+	 */
+	private void compact(int h) {
+		if (h == this.numLevels - 1)
+			this.addLevel();
+		double[] v = this.values[h];
+		int[] c = this.classes[h];
+		int size = this.sizes[h];
+		if (h == 0)
+			sort(v, c, null, 0, size - 1);
+
+		// select the promoted items
+		int pairs = size / 2;
+		int offset = this.random.nextBoolean() ? 1 : 0;
+		double[] promotedValues = new double[pairs];
+		int[] promotedClasses = new int[pairs];
+		for (int i = 0; i < pairs; i++) {
+			promotedValues[i] = v[2 * i + offset];
+			promotedClasses[i] = c[2 * i + offset];
+		}
+
+		// keep the odd item
+		if (size % 2 == 1) {
+			v[0] = v[size - 1];
+			c[0] = c[size - 1];
+		}
+		this.sizes[h] = size % 2;
+
+		// merge the promoted items into the sorted next level
+		int h1 = h + 1;
+		int n1 = this.sizes[h1];
+		double[] mergedValues = new double[Math.max(n1 + pairs, this.values[h1].length)];
+		int[] mergedClasses = new int[mergedValues.length];
+		int i = 0;
+		int k = 0;
+		int m = 0;
+		while (i < n1 || k < pairs) {
+			if (k >= pairs || (i < n1 && this.values[h1][i] <= promotedValues[k])) {
+				mergedValues[m] = this.values[h1][i];
+				mergedClasses[m++] = this.classes[h1][i++];
+			} else {
+				mergedValues[m] = promotedValues[k];
+				mergedClasses[m++] = promotedClasses[k++];
+			}
+		}
+		this.values[h1] = mergedValues;
+		this.classes[h1] = mergedClasses;
+		this.sizes[h1] = m;
+	}
+
+	/**
+	 * Add an empty level on top of the hierarchy
+	 */
+	private void addLevel() {
+		this.values = Arrays.copyOf(this.values, this.numLevels + 1);
+		this.classes = Arrays.copyOf(this.classes, this.numLevels + 1);
+		this.sizes = Arrays.copyOf(this.sizes, this.numLevels + 1);
+		this.values[this.numLevels] = new double[K];
+		this.classes[this.numLevels] = new int[K];
+		this.numLevels++;
+	}
+
+	/**
+	 * Sort items by value (quicksort on parallel arrays)
+	 * 
+	 * @param v
+	 *            values
+	 * @param c
+	 *            class ordinals
+	 * @param w
+	 *            weights, may be null
+	 * @param lo
+	 * @param hi
+	 */
+	private static void sort(double[] v, int[] c, long[] w, int lo, int hi) {
+		while (lo < hi) {
+			if (hi - lo < 16) {
+
+				// insertion sort for short ranges
+				for (int i = lo + 1; i <= hi; i++) {
+					for (int j = i; j > lo && v[j - 1] > v[j]; j--) {
+						swap(v, c, w, j - 1, j);
+					}
+				}
+				return;
+			}
+			double pivot = v[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (v[i] < pivot)
+					i++;
+				while (v[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(v, c, w, i++, j--);
+			}
+
+			// recurse into the smaller part
+			if (j - lo < hi - i) {
+				sort(v, c, w, lo, j);
+				lo = i;
+			} else {
+				sort(v, c, w, i, hi);
+				hi = j;
+			}
+		}
+	}
+
+	private static void swap(double[] v, int[] c, long[] w, int i, int j) {
+		double tv = v[i];
+		v[i] = v[j];
+		v[j] = tv;
+		int tc = c[i];
+		c[i] = c[j];
+		c[j] = tc;
+		if (w != null) {
+			long tw = w[i];
+			w[i] = w[j];
+			w[j] = tw;
+		}
+	}
+}
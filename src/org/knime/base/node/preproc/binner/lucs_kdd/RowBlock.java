@@ -0,0 +1,135 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+
+/**
+ * The values of several features and the class ordinals of a block of rows
+ * read from a table, so that the initial buckets of the values of a feature
+ * are computed at once (see {@link BucketList#bucketIndices(double[], int, int[])})
+ * instead of one value at a time. Missing values are buffered with the bit
+ * pattern of the column store (see {@link ColumnStore#isMissing(double)}). The
+ * number of rows of a block is bounded, so that the buffers of wide tables
+ * stay small.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class RowBlock {
+
+	// largest number of rows of a block
+	private static final int MAX_ROWS = 1 << 12;
+
+	// largest number of buffered values of a block
+	private static final int MAX_VALUES = 1 << 20;
+
+	// column of each feature in the table, -1 for features not buffered
+	private final int[] columns;
+
+	// values of each buffered feature and class ordinal of each row
+	private final double[][] values;
+	private final int[] classes;
+
+	// positions of the initial buckets of the values of a feature
+	private final int[] indices;
+
+	// number of buffered rows
+	private int length;
+
+	/**
+	 * @param columns
+	 *            column of each feature in the table, -1 for features that
+	 *            are not buffered
+	 */
+	RowBlock(int[] columns) {
+		int numBuffered = 0;
+		for (int column : columns) {
+			if (column >= 0)
+				numBuffered++;
+		}
+		int numRows = Math.max(1, Math.min(MAX_ROWS, MAX_VALUES / Math.max(numBuffered, 1)));
+		this.columns = columns;
+		this.values = new double[columns.length][];
+		for (int f = 0; f < columns.length; f++) {
+			if (columns[f] >= 0)
+				this.values[f] = new double[numRows];
+		}
+		this.classes = new int[numRows];
+		this.indices = new int[numRows];
+	}
+
+	/**
+	 * Buffer the values of a row
+	 *
+	 * @param r
+	 * @param classIndex
+	 *            ordinal of the class of the row
+	 * @return true if the block is full
+	 */
+	boolean add(DataRow r, int classIndex) {
+		for (int f = 0; f < this.columns.length; f++) {
+			if (this.columns[f] < 0)
+				continue;
+			DataCell val = r.getCell(this.columns[f]);
+			this.values[f][this.length] = val.isMissing() ? ColumnStore.MISSING : ((DoubleValue) val).getDoubleValue();
+		}
+		this.classes[this.length++] = classIndex;
+		return this.length == this.classes.length;
+	}
+
+	/**
+	 * @param f
+	 *            position of a buffered feature
+	 * @param list
+	 *            the bucket list of the feature
+	 * @return the position of the initial bucket of each buffered value of the
+	 *         feature, valid until the next call
+	 */
+	int[] bucketIndices(int f, BucketList list) {
+		list.bucketIndices(this.values[f], this.length, this.indices);
+		return this.indices;
+	}
+
+	/**
+	 * @param f
+	 * @return true if the values of the feature are buffered
+	 */
+	boolean isBuffered(int f) {
+		return this.values[f] != null;
+	}
+
+	/**
+	 * @param f
+	 *            position of a buffered feature
+	 * @param row
+	 *            position of the row in the block
+	 * @return true if the value is missing
+	 */
+	boolean isMissing(int f, int row) {
+		return ColumnStore.isMissing(this.values[f][row]);
+	}
+
+	/**
+	 * @param row
+	 *            position of the row in the block
+	 * @return the class ordinal of the row
+	 */
+	int getClassIndex(int row) {
+		return this.classes[row];
+	}
+
+	/**
+	 * @return number of buffered rows
+	 */
+	int size() {
+		return this.length;
+	}
+
+	/**
+	 * Remove the buffered rows
+	 */
+	void clear() {
+		this.length = 0;
+	}
+}
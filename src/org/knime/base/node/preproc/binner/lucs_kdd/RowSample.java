@@ -0,0 +1,158 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.util.Random;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Sequential selection of a random sample of rows while iterating over a
+ * table (selection sampling, Knuth's Algorithm S). Each row is selected with
+ * the probability of the number of rows still to select divided by the number
+ * of remaining rows, so exactly the requested number of rows is selected in a
+ * single pass and every subset of this size is equally likely. Rows with a
+ * missing class are never selected and not part of the population, so the
+ * rows are counted with a pass over the class column first.
+ *
+ * A stratified sample applies the selection to the rows of each class
+ * separately, with a sample size of each class proportional to its frequency
+ * (at least one row of every occurring class). The class proportions of the
+ * sample then equal those of the table, so the sampled class frequencies of
+ * the buckets need no weights.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class RowSample {
+
+	// number of rows and rows to select of each stratum
+	private final long[] population;
+	private final long[] target;
+
+	// number of remaining rows and rows still to select of each stratum
+	private final long[] remaining;
+	private final long[] needed;
+
+	// the strata are the class ordinals, otherwise there is a single stratum
+	private final boolean stratified;
+
+	// number of selected rows
+	private final long size;
+
+	// deterministic selection, so that the result is reproducible
+	private final long seed;
+	private final Random random;
+
+	/**
+	 * @param population
+	 *            number of rows of each stratum
+	 * @param needed
+	 *            number of rows to select of each stratum
+	 * @param stratified
+	 * @param seed
+	 */
+	private RowSample(long[] population, long[] needed, boolean stratified, long seed) {
+		this.stratified = stratified;
+		this.population = population;
+		this.target = needed;
+		this.remaining = population.clone();
+		this.needed = needed.clone();
+		long size = 0;
+		for (long n : needed) {
+			size += n;
+		}
+		this.size = size;
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return a sample selecting the same rows in another pass over the table
+	 */
+	RowSample copy() {
+		return new RowSample(this.population, this.target, this.stratified, this.seed);
+	}
+
+	/**
+	 * Count the rows with a class value with a pass over the class column,
+	 * rows with a missing class are not part of the population
+	 *
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary, completed by the pass
+	 * @param size
+	 *            number of rows to select
+	 * @param seed
+	 * @param exec
+	 * @return a uniform sample of the rows with a class value
+	 * @throws CanceledExecutionException
+	 */
+	static RowSample uniform(BufferedDataTable inData, String classAttr, ClassDictionary classes, long size,
+			long seed, ExecutionMonitor exec) throws CanceledExecutionException {
+		long numRows = 0;
+		for (long count : classes.count(inData, classAttr, exec)) {
+			numRows += count;
+		}
+		return new RowSample(new long[] { numRows }, new long[] { Math.min(size, numRows) }, false, seed);
+	}
+
+	/**
+	 * Count the rows of each class with a pass over the class column and
+	 * allocate the sample size proportionally to the classes
+	 *
+	 * @param inData
+	 * @param classAttr
+	 * @param classes
+	 *            the class dictionary, the strata are the class ordinals
+	 * @param size
+	 *            number of rows to select
+	 * @param seed
+	 * @param exec
+	 * @return a class-stratified sample of the rows
+	 * @throws CanceledExecutionException
+	 */
+	static RowSample stratified(BufferedDataTable inData, String classAttr, ClassDictionary classes, long size,
+			long seed, ExecutionMonitor exec) throws CanceledExecutionException {
+		long[] population = classes.count(inData, classAttr, exec);
+		long total = 0;
+		for (long count : population) {
+			total += count;
+		}
+		long[] needed = new long[population.length];
+		for (int c = 0; c < population.length; c++) {
+			if (population[c] > 0)
+				needed[c] = Math.min(population[c], Math.max(1, Math.round(size * (double) population[c] / total)));
+		}
+		return new RowSample(population, needed, true, seed);
+	}
+
+	/**
+	 * Decide whether the next row of a stratum is selected. Must be called
+	 * once for each row of the stratum in the order of the table.
+	 *
+	 * @param stratum
+	 *            the class ordinal of the row (-1 for a missing class), a
+	 *            uniform sample only distinguishes missing classes
+	 * @return true if the row is part of the sample
+	 */
+	boolean select(int stratum) {
+		if (stratum >= 0 && !this.stratified)
+			stratum = 0;
+		if (stratum < 0 || stratum >= this.remaining.length || this.remaining[stratum] <= 0)
+			return false;
+		boolean selected = this.random.nextDouble() * this.remaining[stratum] < this.needed[stratum];
+		this.remaining[stratum]--;
+		if (selected)
+			this.needed[stratum]--;
+		return selected;
+	}
+
+	/**
+	 * @return number of selected rows
+	 */
+	long size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,217 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.knime.core.data.DataCell;
+
+/**
+ * Writes binned rows as a transaction file in the numbered-item format of the
+ * LUCS-KDD classification association rule miners: one line per row with the
+ * space-separated item numbers of the row in ascending order. Each division of
+ * each feature is an item, numbered from 1 in the order of the features and
+ * divisions, followed by one item per class value, which is the last item of a
+ * row. The class items are numbered in the order of the class values of the
+ * model, class values the model was not fitted with are numbered after them
+ * when they are first seen. Missing values and missing classes have no item.
+ *
+ * The digits are encoded directly into a buffer that is written to a file
+ * channel when full, so the rows are written in the same pass in which they
+ * are binned. When the writer is closed, the item schema (the feature and
+ * division or the class value of each item) is written next to the
+ * transaction file.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class TransactionWriter implements AutoCloseable {
+
+	// suffix of the schema file
+	static final String SCHEMA_SUFFIX = ".schema";
+
+	// size of the write buffer
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// room for an item number and its separator
+	private static final int MAX_ITEM_BYTES = 12;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	private final FrozenBucketList[] models;
+
+	// item number of the first division of each feature, and of the first
+	// class value
+	private final int[] offsets;
+
+	// class attribute, the class items are numbered by the class ordinals
+	private final String classAttr;
+	private final ClassDictionary classes;
+
+	/**
+	 * @param file
+	 *            the transaction file, an existing file is overwritten
+	 * @param models
+	 *            fitted model of each feature
+	 * @param classAttr
+	 *            name of the class column
+	 * @param classes
+	 *            the class values of the model, unseen class values are added
+	 *            to it
+	 * @throws IOException
+	 */
+	TransactionWriter(Path file, FrozenBucketList[] models, String classAttr, ClassDictionary classes)
+			throws IOException {
+		this.file = file;
+		this.models = models;
+		this.offsets = new int[models.length + 1];
+		this.offsets[0] = 1;
+		for (int f = 0; f < models.length; f++) {
+			this.offsets[f + 1] = this.offsets[f] + models[f].size();
+		}
+
+		// the class items are numbered by the model, independent of the domain
+		// of the binned table
+		this.classAttr = classAttr;
+		this.classes = classes;
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	/**
+	 * Write the items of a binned row
+	 *
+	 * @param categories
+	 *            category of each feature, -1 for missing values and values
+	 *            not in any division
+	 * @param classVal
+	 *            the class value of the row, null or a missing cell if not
+	 *            known
+	 * @throws IOException
+	 */
+	void write(int[] categories, DataCell classVal) throws IOException {
+		boolean first = true;
+		for (int f = 0; f < categories.length; f++) {
+			if (categories[f] < 0)
+				continue;
+			this.putItem(this.offsets[f] + categories[f], first);
+			first = false;
+		}
+		if (classVal != null && !classVal.isMissing())
+			this.putItem(this.offsets[this.models.length] + this.classes.indexOf(classVal), first);
+		this.ensureRoom();
+		this.buffer.put((byte) '\n');
+	}
+
+	/**
+	 * @param item
+	 *            a positive item number
+	 * @param first
+	 *            true for the first item of the row
+	 * @throws IOException
+	 */
+	private void putItem(int item, boolean first) throws IOException {
+		this.ensureRoom();
+		if (!first)
+			this.buffer.put((byte) ' ');
+
+		// encode the digits from the last one
+		int digits = 1;
+		for (int rest = item / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int end = this.buffer.position() + digits;
+		for (int i = end - 1; i >= this.buffer.position(); i--) {
+			this.buffer.put(i, (byte) ('0' + item % 10));
+			item /= 10;
+		}
+		this.buffer.position(end);
+	}
+
+	/**
+	 * Write the buffer to the channel if it has no room for another item
+	 *
+	 * @throws IOException
+	 */
+	private void ensureRoom() throws IOException {
+		if (this.buffer.remaining() < MAX_ITEM_BYTES)
+			this.flush();
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * @return the schema file of the transaction file
+	 */
+	Path getSchemaFile() {
+		return schemaFile(this.file);
+	}
+
+	/**
+	 * @param file
+	 *            a transaction file
+	 * @return the schema file of the transaction file
+	 */
+	static Path schemaFile(Path file) {
+		return Paths.get(file.toString() + SCHEMA_SUFFIX);
+	}
+
+	/**
+	 * Write the item schema: a tab-separated line for each item with the item
+	 * number, the attribute, the category or class value, and the interval of
+	 * the category
+	 *
+	 * @throws IOException
+	 */
+	private void writeSchema() throws IOException {
+		StringBuilder schema = new StringBuilder("Item\tAttribute\tValue\tInterval\n");
+		for (int f = 0; f < this.models.length; f++) {
+			FrozenBucketList model = this.models[f];
+			for (int i = 0; i < model.size(); i++) {
+				schema.append(this.offsets[f] + i).append('\t').append(model.getFeature()).append('\t')
+						.append("Interval_").append(i).append('\t').append(model.getInterval(i)).append('\n');
+			}
+		}
+		for (int c = 0; c < this.classes.size(); c++) {
+			schema.append(this.offsets[this.models.length] + c).append('\t').append(this.classAttr).append('\t')
+					.append(this.classes.get(c)).append("\t\n");
+		}
+		try (FileChannel out = FileChannel.open(this.getSchemaFile(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer bytes = ByteBuffer.wrap(schema.toString().getBytes(StandardCharsets.UTF_8));
+			while (bytes.hasRemaining()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Write the remaining rows and the item schema
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+			this.writeSchema();
+		} finally {
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * Summary of the values of a feature with the ordinals of their classes,
+ * collected in the pass over the input table when the initial buckets can
+ * only be created after the pass (see
+ * {@link BucketList#fill(BucketList[], org.knime.core.node.BufferedDataTable, String, ClassDictionary, org.knime.core.node.ExecutionMonitor)}).
+ * The buckets are filled by replaying the collected values if the sketch
+ * kept their exact class frequencies, otherwise with a second pass.
+ * 
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+interface ValueSketch {
+
+	/**
+	 * Add a value with the ordinal of its class
+	 * 
+	 * @param x
+	 * @param classIndex
+	 */
+	void add(double x, int classIndex);
+
+	/**
+	 * Create the empty initial buckets of the bucket list from the collected
+	 * values
+	 * 
+	 * @param list
+	 * @throws InvalidSettingsException
+	 *             if no values were collected
+	 */
+	void createBuckets(BucketList list) throws InvalidSettingsException;
+
+	/**
+	 * @return true if the sketch kept the exact class frequencies of all
+	 *         values, so they can be replayed into the buckets
+	 */
+	boolean isExact();
+
+	/**
+	 * Add the collected values to the initial buckets created by
+	 * {@link #createBuckets(BucketList)}. Only possible if the sketch is
+	 * exact.
+	 * 
+	 * @param list
+	 */
+	void replay(BucketList list);
+}
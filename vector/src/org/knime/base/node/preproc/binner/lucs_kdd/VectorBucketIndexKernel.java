@@ -0,0 +1,59 @@
+package org.knime.base.node.preproc.binner.lucs_kdd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes the initial buckets of a batch of values in an equal-width grid
+ * with the Vector API, as many values at once as fit into the preferred
+ * vector size of the processor. Loaded by {@link BucketIndexKernel} if this
+ * fragment is installed and the runtime provides the module
+ * jdk.incubator.vector.
+ *
+ * The Vector API has no lane-wise ceiling, and its conversions from double
+ * to integer lanes are not compiled to vector instructions, so the kernel
+ * stays in double arithmetic: t = N * z is clamped to [0, N] (NaN to 0), and
+ * adding and subtracting 2^52 rounds it to an integer, which is corrected to
+ * ceil(t). For an integer b in [0, 2^31), the low 32 bits of b + 2^52 are b,
+ * so the bucket positions are narrowed from the bits of the doubles.
+ *
+ * @author Tobias Witt, University of Konstanz
+ *
+ */
+final class VectorBucketIndexKernel extends BucketIndexKernel {
+
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+	// ints with the same number of lanes as the doubles
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+			VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+	// doubles whose ulp is 1
+	private static final double ROUND = 0x1p52;
+
+	@Override
+	void equalWidthIndices(double[] x, int length, double low, double range, int n, int maxIndex, int[] indices) {
+		DoubleVector zero = DoubleVector.zero(DOUBLES);
+		double upper = maxIndex + 1.0;
+		int bound = DOUBLES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += DOUBLES.length()) {
+
+			// t = N * z clamped to [0, N], NaN and values below the grid to 0
+			DoubleVector t = DoubleVector.fromArray(DOUBLES, x, i).sub(low).div(range).mul(n);
+			t = zero.blend(t, t.compare(VectorOperators.GE, 0.0)).min(upper);
+
+			// ceil(t) - 1, at least 0
+			DoubleVector b = t.add(ROUND).sub(ROUND);
+			b = b.add(1.0, b.compare(VectorOperators.LT, t)).sub(1.0).max(0.0);
+			((IntVector) b.add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I, INTS, 0))
+					.intoArray(indices, i);
+		}
+		for (; i < length; i++) {
+			indices[i] = (int) equalWidthIndex(x[i], low, range, n, maxIndex);
+		}
+	}
+}